@@ -0,0 +1,74 @@
+package red.felnull.ikenaichip8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lockstep batch of machines against the same number of separate Chip8 instances
+ * Both run one frame from reset, scored per instruction of one machine
+ *
+ * @author MORIMORI0317
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BatchBenchmark {
+    private static final int LANES = 1024;
+    private static final int FRAMES = 10;
+    // 10 frames at 500 instructions per second are 84 instructions
+    private static final int CYCLES = 84;
+    @Param({"digits.ch8", "sprites.ch8", "alu.ch8"})
+    public String rom;
+    private Chip8Batch batch;
+    private Chip8[] machines;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        RomImage image = RomImage.of(BenchmarkRoms.load(rom));
+        batch = new Chip8Batch(image, LANES);
+        machines = new Chip8[LANES];
+        for (int i = 0; i < LANES; i++) {
+            machines[i] = new Chip8();
+            machines[i].loadROM(image);
+            machines[i].setSeed(i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * CYCLES)
+    public long batch() {
+        batch.reset();
+        for (int i = 0; i < FRAMES; i++)
+            batch.runFrame();
+        return batch.getCycles();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LANES * CYCLES)
+    public long machines() {
+        long cycles = 0;
+        for (Chip8 machine : machines) {
+            machine.reset();
+            for (int i = 0; i < FRAMES; i++)
+                machine.runFrame();
+            cycles += machine.getCycles();
+        }
+        return cycles;
+    }
+}
@@ -0,0 +1,42 @@
+package red.felnull.ikenaichip8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Loads the ROMs bundled with the benchmarks
+ *
+ * @author MORIMORI0317
+ */
+public final class BenchmarkRoms {
+    private BenchmarkRoms() {
+    }
+
+    public static byte[] load(String name) {
+        try (InputStream stream = BenchmarkRoms.class.getResourceAsStream("/roms/" + name)) {
+            if (stream == null)
+                throw new IllegalStateException("No bundled rom: " + name);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = stream.read(buffer)) >= 0)
+                bout.write(buffer, 0, len);
+            return bout.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static byte[] repeat(int opcode, int count) {
+        byte[] rom = new byte[count * 2 + 2];
+        for (int i = 0; i < count; i++) {
+            rom[i * 2] = (byte) (opcode >> 8);
+            rom[i * 2 + 1] = (byte) opcode;
+        }
+        rom[count * 2] = 0x12;
+        rom[count * 2 + 1] = 0x00;
+        return rom;
+    }
+}
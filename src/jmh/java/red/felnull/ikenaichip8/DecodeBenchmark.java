@@ -0,0 +1,70 @@
+package red.felnull.ikenaichip8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode only and memory read cost
+ * decode does the decode table lookup of CPU.step
+ *
+ * @author MORIMORI0317
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final int OPCODES = 1024;
+    private final int[] opcodes = new int[OPCODES];
+    private Chip8 chip8;
+    private CPU.ProcessorCode[] table;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chip8 = new Chip8();
+        chip8.loadROM(BenchmarkRoms.load("digits.ch8"));
+        chip8.init();
+        table = CPU.ProcessorCode.getTable(chip8.mode, chip8.quirks);
+        int[] samples = {0x00E0, 0x00EE, 0x1234, 0x2345, 0x3A12, 0x6B05, 0x7C01, 0x8AB4, 0x8AB6, 0x8ABE,
+                0xA300, 0xC0FF, 0xDAB5, 0xE19E, 0xF00A, 0xF129, 0xF233, 0xF355, 0xF465};
+        for (int i = 0; i < OPCODES; i++)
+            opcodes[i] = samples[i % samples.length];
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPCODES)
+    public int decode() {
+        CPU.ProcessorCode[] table = this.table;
+        int sum = 0;
+        for (int opcode : opcodes) {
+            CPU.ProcessorCode code = table[opcode];
+            if (code == null)
+                throw new IllegalStateException("Non existent processor code: " + Integer.toHexString(opcode));
+            sum += code.ordinal();
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPCODES)
+    public int memoryRead() {
+        int sum = 0;
+        for (int i = 0; i < OPCODES; i++)
+            sum += chip8.memory.read(0x200 + (i & 0x3F));
+        return sum;
+    }
+}
@@ -0,0 +1,58 @@
+package red.felnull.ikenaichip8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sprite draw cost for each sprite height and start column
+ *
+ * @author MORIMORI0317
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawBenchmark {
+    private static final int DRAWS = 256;
+    @Param({"1", "5", "15"})
+    public int height;
+    @Param({"0", "3", "60"})
+    public int x;
+    private Chip8 chip8;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chip8 = new Chip8();
+        chip8.loadROM(BenchmarkRoms.load("sprites.ch8"));
+        chip8.init();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DRAWS)
+    public boolean draw() {
+        boolean collision = false;
+        for (int i = 0; i < DRAWS; i++)
+            collision |= chip8.display.draw(x, i & 0x1F, 0x240, height);
+        return collision;
+    }
+
+    @Benchmark
+    public void clear() {
+        chip8.display.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package red.felnull.ikenaichip8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution cost of a single opcode class
+ * The ROM repeats one instruction and jumps back to the start
+ * FX55 and FX65 leave I unchanged, otherwise the repeated loads walk I off the end of memory
+ *
+ * @author MORIMORI0317
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecuteBenchmark {
+    private static final int CYCLES = 1024;
+    @Param({"6A12", "7A01", "8AB4", "8AB6", "A300", "DAB5", "FA33", "FA65"})
+    public String opcode;
+    private Chip8 chip8;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chip8 = new Chip8();
+        chip8.setQuirks(EnumSet.of(Chip8Quirk.SHIFT_VX, Chip8Quirk.ADD_I_OVERFLOW));
+        chip8.loadROM(BenchmarkRoms.repeat(Integer.parseInt(opcode, 16), 63));
+        chip8.init();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public void cycle() {
+        for (int i = 0; i < CYCLES; i++)
+            chip8.cycle();
+    }
+}
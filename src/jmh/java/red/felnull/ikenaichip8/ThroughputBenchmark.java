@@ -0,0 +1,54 @@
+package red.felnull.ikenaichip8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End to end instructions per second on the bundled ROMs
+ *
+ * @author MORIMORI0317
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ThroughputBenchmark {
+    private static final int CYCLES = 10000;
+    @Param({"digits.ch8", "sprites.ch8", "alu.ch8"})
+    public String rom;
+    @Param({"false", "true"})
+    public boolean blockCache;
+    private Chip8 chip8;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        chip8 = new Chip8();
+        chip8.setBlockCache(blockCache);
+        chip8.loadROM(BenchmarkRoms.load(rom));
+        chip8.init();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CYCLES)
+    public int instructions() {
+        int executed = 0;
+        while (executed < CYCLES)
+            executed += chip8.cycleBlock();
+        return executed;
+    }
+}
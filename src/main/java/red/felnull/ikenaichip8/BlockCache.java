@@ -0,0 +1,151 @@
+package red.felnull.ikenaichip8;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+/**
+ * Cache of pre-decoded straight-line basic blocks
+ * Blocks are invalidated when memory they cover is written
+ *
+ * @author MORIMORI0317
+ */
+public class BlockCache {
+    private static final int MAX_BLOCK_LENGTH = 64;
+    /**
+     * Largest number of bytes a block covers, F000 takes 4 bytes
+     */
+    private static final int MAX_BLOCK_SPAN = MAX_BLOCK_LENGTH * 4;
+    private static final EnumSet<CPU.ProcessorCode> TERMINATORS = EnumSet.of(
+            CPU.ProcessorCode._00EE,
+            CPU.ProcessorCode._1NNN,
+            CPU.ProcessorCode._2NNN,
+            CPU.ProcessorCode._3XNN,
+            CPU.ProcessorCode._4XNN,
+            CPU.ProcessorCode._5XY0,
+            CPU.ProcessorCode._9XY0,
+            CPU.ProcessorCode._BNNN,
+            CPU.ProcessorCode._BXNN,
+            CPU.ProcessorCode._EX9E,
+            CPU.ProcessorCode._EXA1,
+            CPU.ProcessorCode._FX0A,
+            CPU.ProcessorCode._FX33,
+            CPU.ProcessorCode._FX55,
+            CPU.ProcessorCode._FX55_NO_INCREMENT,
+            CPU.ProcessorCode._00FD,
+            CPU.ProcessorCode._5XY2);
+    private final Chip8 chip8;
+    private Block[] blocks;
+    private long[] covered;
+    private RomAnalysis analysis;
+    private CPU.ProcessorCode[] table;
+
+    protected BlockCache(Chip8 chip8) {
+        this.chip8 = chip8;
+        this.blocks = new Block[chip8.memory.size()];
+        this.covered = new long[(blocks.length + 63) >> 6];
+        this.analysis = chip8.memory.getAnalysis();
+        this.table = CPU.ProcessorCode.getTable(chip8.mode, chip8.quirks);
+    }
+
+    protected Block getBlock(int address) {
+        Block block = blocks[address];
+        if (block == null) {
+            block = analysis == null ? null : analysis.getBlock(address);
+            if (block == null || !chip8.memory.isShared(address) || !chip8.memory.isShared(block.end - 1))
+                block = compile(address);
+            blocks[address] = block;
+            int end = Math.min(block.end, blocks.length);
+            for (int i = address; i < end; i++)
+                covered[i >> 6] |= 1L << i;
+        }
+        return block;
+    }
+
+    protected void invalidate(int address, int length) {
+        int end = Math.min(address + length, blocks.length);
+        boolean hit = false;
+        for (int i = address; i < end; i++) {
+            if ((covered[i >> 6] & (1L << i)) != 0) {
+                hit = true;
+                break;
+            }
+        }
+        if (!hit)
+            return;
+
+        int from = Math.max(0, address - MAX_BLOCK_SPAN + 1);
+        for (int i = from; i < end; i++) {
+            if (blocks[i] != null && blocks[i].end > address)
+                blocks[i] = null;
+        }
+    }
+
+    protected void clear() {
+        analysis = chip8.memory.getAnalysis();
+        table = CPU.ProcessorCode.getTable(chip8.mode, chip8.quirks);
+        if (blocks.length != chip8.memory.size()) {
+            blocks = new Block[chip8.memory.size()];
+            covered = new long[(blocks.length + 63) >> 6];
+            return;
+        }
+        Arrays.fill(blocks, null);
+        Arrays.fill(covered, 0);
+    }
+
+    private Block compile(int address) {
+        int[] opcodes = new int[MAX_BLOCK_LENGTH];
+        CPU.ProcessorCode[] codes = new CPU.ProcessorCode[MAX_BLOCK_LENGTH];
+        CPU.ProcessorCode[] table = this.table;
+        int length = 0;
+        int pc = address;
+        while (length == 0 || (length < MAX_BLOCK_LENGTH && pc + 1 < blocks.length)) {
+            int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
+            CPU.ProcessorCode code = table[opcode];
+            if (code == null) {
+                if (length == 0)
+                    throw new IllegalStateException("Non existent processor code: " + Integer.toHexString(opcode));
+                break;
+            }
+            opcodes[length] = opcode;
+            codes[length] = code;
+            length++;
+            pc += code == CPU.ProcessorCode._F000 ? 4 : 2;
+            if (TERMINATORS.contains(code))
+                break;
+        }
+        return new Block(pc, Arrays.copyOf(opcodes, length), Arrays.copyOf(codes, length));
+    }
+
+    protected static Block compile(CPU.ProcessorCode[] decoded, int[] decodedOpcodes, int base, int end, int address) {
+        int[] opcodes = new int[MAX_BLOCK_LENGTH];
+        CPU.ProcessorCode[] codes = new CPU.ProcessorCode[MAX_BLOCK_LENGTH];
+        int length = 0;
+        int pc = address;
+        while (length < MAX_BLOCK_LENGTH && pc + 1 < end) {
+            CPU.ProcessorCode code = decoded[pc - base];
+            if (code == null)
+                break;
+            opcodes[length] = decodedOpcodes[pc - base];
+            codes[length] = code;
+            length++;
+            pc += code == CPU.ProcessorCode._F000 ? 4 : 2;
+            if (TERMINATORS.contains(code))
+                break;
+        }
+        return new Block(pc, Arrays.copyOf(opcodes, length), Arrays.copyOf(codes, length));
+    }
+
+    protected static class Block {
+        protected final int end;
+        protected final int length;
+        protected final int[] opcodes;
+        protected final CPU.ProcessorCode[] codes;
+
+        private Block(int end, int[] opcodes, CPU.ProcessorCode[] codes) {
+            this.end = end;
+            this.length = opcodes.length;
+            this.opcodes = opcodes;
+            this.codes = codes;
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package red.felnull.ikenaichip8;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
-import java.util.Random;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CPU {
-    private final Random random = new Random();
     private final Chip8 chip8;
     private final int[] V = new int[16];
     private int I;
@@ -13,21 +14,64 @@ public class CPU {
     private int pc;
     private int delayTimer;
     private int soundTimer;
+    private long cycles;
+    protected boolean idle;
+    private final int[] flags = new int[16];
+    private final int[] pattern = new int[16];
+    private int pitch;
+    private ProcessorCode[] decodeTable = ProcessorCode.getTable(Chip8Mode.CHIP8);
+    private boolean extended;
+    private boolean xo;
 
     protected CPU(Chip8 chip8) {
         this.chip8 = chip8;
     }
 
     protected void cycle() {
+        step();
+        tickTimers();
+    }
+
+    protected void step() {
         int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
 
-        execute(opcode);
+        execute(getByOpcode(opcode), opcode);
+    }
 
+    protected ProcessorCode getByOpcode(int opcode) {
+        ProcessorCode code = decodeTable[opcode & 0xFFFF];
+        if (code == null)
+            throw new IllegalStateException("Non existent processor code: " + Integer.toHexString(opcode));
+        return code;
+    }
+
+    protected int cycleBlock(BlockCache blockCache, boolean tickTimers, long limit) {
+        BlockCache.Block block = blockCache.getBlock(pc);
+        int length = (int) Math.min(block.length, limit);
+        for (int i = 0; i < length; i++) {
+            execute(block.codes[i], block.opcodes[i]);
+            if (tickTimers)
+                tickTimers();
+        }
+        return length;
+    }
+
+    protected void tickTimers() {
         if (delayTimer > 0)
             delayTimer--;
 
-        if (soundTimer > 0)
-            soundTimer--;
+        if (soundTimer > 0 && --soundTimer == 0)
+            sound(cycles);
+    }
+
+    protected void sound() {
+        sound(cycles);
+    }
+
+    private void sound(long cycle) {
+        Chip8Audio audio = chip8.audio;
+        if (audio != null)
+            audio.sound(cycle, soundTimer > 0, pitch, pattern);
     }
 
     protected void init() {
@@ -38,22 +82,66 @@ public class CPU {
         this.pc = 0x200;
         this.delayTimer = 0;
         this.soundTimer = 0;
+        this.cycles = 0;
+        this.idle = false;
+        Arrays.fill(this.pattern, 0);
+        this.pitch = 64;
+        Chip8Mode mode = chip8.mode;
+        this.decodeTable = ProcessorCode.getTable(mode, chip8.quirks);
+        this.extended = mode != Chip8Mode.CHIP8;
+        this.xo = mode == Chip8Mode.XOCHIP;
+        sound(cycles);
     }
 
-    private void execute(int opcode) {
-        ProcessorCode code = ProcessorCode.getByOpcode(opcode);
+    private void execute(ProcessorCode code, int opcode) {
+        Chip8Metrics metrics = chip8.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null)
+            metrics.count(code);
+        Chip8Profiler profiler = chip8.profiler;
+        if (profiler != null)
+            profiler.execute(pc, code, opcode);
         int nextPc = this.pc + 2;
         switch (code) {
             case _00E0:
-                Arrays.fill(chip8.graphic, false);
+                chip8.display.clear();
                 chip8.drawFlag = true;
                 break;
             case _00EE:
                 sp--;
                 nextPc = stack[sp] + 2;
                 break;
+            case _00CN:
+                chip8.display.scrollDown(opcode & 0x000F);
+                chip8.drawFlag = true;
+                break;
+            case _00DN:
+                chip8.display.scrollUp(opcode & 0x000F);
+                chip8.drawFlag = true;
+                break;
+            case _00FB:
+                chip8.display.scrollRight(4);
+                chip8.drawFlag = true;
+                break;
+            case _00FC:
+                chip8.display.scrollLeft(4);
+                chip8.drawFlag = true;
+                break;
+            case _00FD:
+                nextPc = pc;
+                idle = true;
+                break;
+            case _00FE:
+                chip8.display.setHires(false);
+                chip8.drawFlag = true;
+                break;
+            case _00FF:
+                chip8.display.setHires(true);
+                chip8.drawFlag = true;
+                break;
             case _1NNN:
                 nextPc = opcode & 0x0FFF;
+                if (nextPc == pc || (nextPc == pc - 4 && isTimerPoll(nextPc)))
+                    idle = true;
                 break;
             case _2NNN:
                 stack[sp] = pc;
@@ -62,16 +150,38 @@ public class CPU {
                 break;
             case _3XNN:
                 if (V[(opcode & 0x0F00) >> 8] == (opcode & 0x00FF))
-                    nextPc = this.pc + 4;
+                    nextPc = skip();
                 break;
             case _4XNN:
                 if (V[(opcode & 0x0F00) >> 8] != (opcode & 0x00FF))
-                    nextPc = this.pc + 4;
+                    nextPc = skip();
                 break;
             case _5XY0:
                 if (V[(opcode & 0x0F00) >> 8] == V[(opcode & 0x00F0) >> 4])
-                    nextPc = this.pc + 4;
+                    nextPc = skip();
+                break;
+            case _5XY2: {
+                int x = (opcode & 0x0F00) >> 8;
+                int y = (opcode & 0x00F0) >> 4;
+                int step = x <= y ? 1 : -1;
+                for (int i = 0; ; i++, x += step) {
+                    chip8.memory.write(I + i, V[x]);
+                    if (x == y)
+                        break;
+                }
+                break;
+            }
+            case _5XY3: {
+                int x = (opcode & 0x0F00) >> 8;
+                int y = (opcode & 0x00F0) >> 4;
+                int step = x <= y ? 1 : -1;
+                for (int i = 0; ; i++, x += step) {
+                    V[x] = chip8.memory.read(I + i);
+                    if (x == y)
+                        break;
+                }
                 break;
+            }
             case _6XNN:
                 V[(opcode & 0x0F00) >> 8] = (opcode & 0x00FF);
                 break;
@@ -110,6 +220,10 @@ public class CPU {
                 V[0xF] = (V[(opcode & 0x0F00) >> 8] & 0x1);
                 V[(opcode & 0x0F00) >> 8] = V[(opcode & 0x0F00) >> 8] >> 1;
                 break;
+            case _8XY6_VY:
+                V[0xF] = (V[(opcode & 0x00F0) >> 4] & 0x1);
+                V[(opcode & 0x0F00) >> 8] = V[(opcode & 0x00F0) >> 4] >> 1;
+                break;
             case _8XY7:
                 if (V[(opcode & 0x0F00) >> 8] > V[(opcode & 0x00F0) >> 4])
                     V[0xF] = 0;
@@ -121,9 +235,13 @@ public class CPU {
                 V[0xF] = (V[(opcode & 0x0F00) >> 8] >> 7);
                 V[(opcode & 0x0F00) >> 8] = V[(opcode & 0x0F00) >> 8] << 1;
                 break;
+            case _8XYE_VY:
+                V[0xF] = (V[(opcode & 0x00F0) >> 4] >> 7);
+                V[(opcode & 0x0F00) >> 8] = V[(opcode & 0x00F0) >> 4] << 1;
+                break;
             case _9XY0:
                 if (V[(opcode & 0x0F00) >> 8] != V[(opcode & 0x00F0) >> 4])
-                    nextPc = this.pc + 4;
+                    nextPc = skip();
                 break;
             case _ANNN:
                 I = opcode & 0x0FFF;
@@ -131,59 +249,58 @@ public class CPU {
             case _BNNN:
                 nextPc = (opcode & 0x0FFF) + V[0];
                 break;
+            case _BXNN:
+                nextPc = (opcode & 0x0FFF) + V[(opcode & 0x0F00) >> 8];
+                break;
             case _CXNN:
-                V[(opcode & 0x0F00) >> 8] = (random.nextInt(32767) % 0xFF) & (opcode & 0x00FF);
+                V[(opcode & 0x0F00) >> 8] = (chip8.random.nextInt(32767) % 0xFF) & (opcode & 0x00FF);
                 break;
             case _DXYN:
-                int x = V[(opcode & 0x0F00) >> 8];
-                int y = V[(opcode & 0x00F0) >> 4];
-                int height = opcode & 0x000F;
-                int pixel;
-
-                V[0xF] = 0;
-                for (int yline = 0; yline < height; yline++) {
-                    pixel = chip8.memory.read(I + yline);
-                    for (int xline = 0; xline < 8; xline++) {
-                        if ((pixel & (0x80 >> xline)) != 0) {
-                            int i = x + xline + ((y + yline) * 64);
-                            if (chip8.graphic.length <= i || i < 0)
-                                break;
-                            if (chip8.graphic[i]) {
-                                V[0xF] = 1;
-                            }
-                            chip8.graphic[i] = !chip8.graphic[i];
-                        }
-                    }
-                }
+                V[0xF] = chip8.display.draw(V[(opcode & 0x0F00) >> 8], V[(opcode & 0x00F0) >> 4], I, opcode & 0x000F) ? 1 : 0;
+                chip8.drawFlag = true;
+                break;
+            case _DXYN_WRAP:
+                V[0xF] = chip8.display.drawWrapped(V[(opcode & 0x0F00) >> 8], V[(opcode & 0x00F0) >> 4], I, opcode & 0x000F) ? 1 : 0;
                 chip8.drawFlag = true;
                 break;
             case _EX9E:
-                if (chip8.key[V[(opcode & 0x0F00) >> 8]])
-                    nextPc = this.pc + 4;
+                if (chip8.isKeyPressed(V[(opcode & 0x0F00) >> 8]))
+                    nextPc = skip();
                 break;
             case _EXA1:
-                if (!chip8.key[V[(opcode & 0x0F00) >> 8]])
-                    nextPc = this.pc + 4;
+                if (!chip8.isKeyPressed(V[(opcode & 0x0F00) >> 8]))
+                    nextPc = skip();
+                break;
+            case _F000:
+                I = chip8.memory.read(pc + 2) << 8 | chip8.memory.read(pc + 3);
+                nextPc = this.pc + 4;
+                break;
+            case _FN01:
+                chip8.display.setPlanes((opcode & 0x0F00) >> 8);
+                break;
+            case _F002:
+                for (int i = 0; i < pattern.length; i++)
+                    pattern[i] = chip8.memory.read(I + i);
+                sound(cycles);
                 break;
             case _FX07:
                 V[(opcode & 0x0F00) >> 8] = delayTimer;
                 break;
             case _FX0A:
-                boolean keyPress = false;
-                for (int i = 0; i < 16; ++i) {
-                    if (chip8.key[i]) {
-                        V[(opcode & 0x0F00) >> 8] = i;
-                        keyPress = true;
-                    }
-                }
-                if (!keyPress)
+                int keys = chip8.key.get();
+                if (keys != 0) {
+                    V[(opcode & 0x0F00) >> 8] = 31 - Integer.numberOfLeadingZeros(keys);
+                } else {
                     nextPc = this.pc;
+                    idle = true;
+                }
                 break;
             case _FX15:
                 delayTimer = V[(opcode & 0x0F00) >> 8];
                 break;
             case _FX18:
                 soundTimer = V[(opcode & 0x0F00) >> 8];
+                sound(cycles);
                 break;
             case _FX1E:
                 if (I + V[(opcode & 0x0F00) >> 8] > 0xFFF)
@@ -192,40 +309,237 @@ public class CPU {
                     V[0xF] = 0;
                 I += V[(opcode & 0x0F00) >> 8];
                 break;
+            case _FX1E_NO_VF:
+                I += V[(opcode & 0x0F00) >> 8];
+                break;
             case _FX29:
                 I = V[(opcode & 0x0F00) >> 8] * 0x5;
                 break;
+            case _FX30:
+                I = RomImage.BIG_FONT_ADDRESS + (V[(opcode & 0x0F00) >> 8] & 0xF) * 10;
+                break;
+            case _FX3A:
+                pitch = V[(opcode & 0x0F00) >> 8];
+                sound(cycles);
+                break;
             case _FX33:
                 chip8.memory.write(I, V[(opcode & 0x0F00) >> 8] / 100);
                 chip8.memory.write(I + 1, (V[(opcode & 0x0F00) >> 8] / 10) % 10);
                 chip8.memory.write(I + 2, (V[(opcode & 0x0F00) >> 8] % 100) % 10);
                 break;
             case _FX55:
-                System.arraycopy(V, 0, chip8.memory.memory, I, ((opcode & 0x0F00) >> 8) + 1);
+                chip8.memory.store(I, V, ((opcode & 0x0F00) >> 8) + 1);
                 I += ((opcode & 0x0F00) >> 8) + 1;
                 break;
+            case _FX55_NO_INCREMENT:
+                chip8.memory.store(I, V, ((opcode & 0x0F00) >> 8) + 1);
+                break;
             case _FX65:
-                System.arraycopy(chip8.memory.memory, I, V, 0, ((opcode & 0x0F00) >> 8) + 1);
+                chip8.memory.load(I, V, ((opcode & 0x0F00) >> 8) + 1);
                 I += ((opcode & 0x0F00) >> 8) + 1;
                 break;
+            case _FX65_NO_INCREMENT:
+                chip8.memory.load(I, V, ((opcode & 0x0F00) >> 8) + 1);
+                break;
+            case _FX75:
+                System.arraycopy(V, 0, flags, 0, Math.min((opcode & 0x0F00) >> 8, xo ? 15 : 7) + 1);
+                break;
+            case _FX85:
+                System.arraycopy(flags, 0, V, 0, Math.min((opcode & 0x0F00) >> 8, xo ? 15 : 7) + 1);
+                break;
         }
         V[(opcode & 0x0F00) >> 8] &= 0xFF;
         this.pc = nextPc;
+        this.cycles++;
+    }
+
+    /**
+     * Address after a skipped instruction
+     * The 4 byte F000 NNNN instruction is skipped as a whole in XO-CHIP mode
+     *
+     * @return Next pc
+     */
+    private int skip() {
+        if (xo && chip8.memory.read(pc + 2) == 0xF0 && chip8.memory.read(pc + 3) == 0x00)
+            return pc + 6;
+        return pc + 4;
+    }
+
+    /**
+     * Skip repetitions of the wait loop at pc without executing them
+     * Handles a jump to itself, FX0A without a pressed key and the FX07 / 3XNN / 1NNN delay timer poll
+     * The delay timer does not change before the next timer tick, so the poll loop cannot exit until then
+     * A poll is only skipped once its register holds the current timer value, so the skipped loops change nothing
+     * A skip past the tick would miss it, the caller bounds limit by the cycles left until the tick
+     *
+     * @param limit Maximum number of instructions to skip, at most the cycles until the next timer tick
+     * @return Number of skipped instructions
+     */
+    protected long skipIdle(long limit) {
+        idle = false;
+        int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
+        int length;
+        if (isHalt(opcode)) {
+            length = 1;
+        } else if ((opcode & 0xF0FF) == 0xF00A) {
+            if (chip8.key.get() != 0)
+                return 0;
+            length = 1;
+        } else if (isTimerPoll(pc)) {
+            if (delayTimer == chip8.memory.read(pc + 3) || V[chip8.memory.read(pc) & 0xF] != delayTimer)
+                return 0;
+            length = 3;
+        } else {
+            return 0;
+        }
+        long skipped = limit - limit % length;
+        cycles += skipped;
+        return skipped;
+    }
+
+    /**
+     * Whether the machine waits for a key or has halted, and no timer is running
+     *
+     * @return Is parkable
+     */
+    protected boolean isParkable() {
+        if (delayTimer != 0 || soundTimer != 0)
+            return false;
+        int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
+        return isHalt(opcode) || ((opcode & 0xF0FF) == 0xF00A && chip8.key.get() == 0);
+    }
+
+    /**
+     * Run the timers down while the machine is in a wait state
+     *
+     * @param cyclesPerTick Instructions per timer tick, places the end of the sound
+     * @return Number of timer ticks skipped
+     */
+    protected int fastForwardTimers(long cyclesPerTick) {
+        int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
+        int ticks;
+        if (isTimerPoll(pc)) {
+            int target = chip8.memory.read(pc + 3);
+            if (delayTimer <= target)
+                return 0;
+            ticks = delayTimer - target;
+        } else if (isHalt(opcode) || ((opcode & 0xF0FF) == 0xF00A && chip8.key.get() == 0)) {
+            ticks = Math.max(delayTimer, soundTimer);
+        } else {
+            return 0;
+        }
+        delayTimer = Math.max(0, delayTimer - ticks);
+        if (soundTimer > 0 && soundTimer <= ticks) {
+            long end = cycles + soundTimer * cyclesPerTick;
+            soundTimer = 0;
+            sound(end);
+        } else {
+            soundTimer = Math.max(0, soundTimer - ticks);
+        }
+        return ticks;
+    }
+
+    private boolean isTimerPoll(int address) {
+        if (address < 0 || address + 5 >= chip8.memory.size())
+            return false;
+        int first = (chip8.memory.read(address) << 8 | chip8.memory.read(address + 1));
+        int second = (chip8.memory.read(address + 2) << 8 | chip8.memory.read(address + 3));
+        int third = (chip8.memory.read(address + 4) << 8 | chip8.memory.read(address + 5));
+        return (first & 0xF0FF) == 0xF007 && (second & 0xFF00) == (0x3000 | (first & 0x0F00)) && isJumpTo(third, address);
+    }
+
+    protected boolean isHalted() {
+        int opcode = (chip8.memory.read(pc) << 8 | chip8.memory.read(pc + 1));
+        return isHalt(opcode);
+    }
+
+    private boolean isHalt(int opcode) {
+        return isJumpTo(opcode, pc) || (opcode == 0x00FD && extended);
+    }
+
+    /**
+     * Whether the opcode is a 1NNN jump to the address
+     * 1NNN only reaches the first 4KB, XO-CHIP code above it can not jump to itself
+     */
+    private static boolean isJumpTo(int opcode, int address) {
+        return address <= 0x0FFF && (opcode & 0xF000) == 0x1000 && (opcode & 0x0FFF) == address;
+    }
+
+    protected void skipCycles(long skipped) {
+        cycles += skipped;
+    }
+
+    protected long getCycles() {
+        return cycles;
+    }
+
+    protected void save(ByteBuffer buffer) {
+        for (int v : V)
+            buffer.put((byte) v);
+        buffer.putShort((short) I);
+        for (int address : stack)
+            buffer.putShort((short) address);
+        buffer.put((byte) sp);
+        buffer.putShort((short) pc);
+        buffer.put((byte) delayTimer);
+        buffer.put((byte) soundTimer);
+        for (int flag : flags)
+            buffer.put((byte) flag);
+        for (int b : pattern)
+            buffer.put((byte) b);
+        buffer.put((byte) pitch);
+        buffer.putLong(cycles);
+    }
+
+    protected void load(ByteBuffer buffer) {
+        for (int i = 0; i < V.length; i++)
+            V[i] = buffer.get() & 0xFF;
+        I = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < stack.length; i++)
+            stack[i] = buffer.getShort() & 0xFFFF;
+        sp = buffer.get() & 0xFF;
+        pc = buffer.getShort() & 0xFFFF;
+        delayTimer = buffer.get() & 0xFF;
+        soundTimer = buffer.get() & 0xFF;
+        for (int i = 0; i < flags.length; i++)
+            flags[i] = buffer.get() & 0xFF;
+        for (int i = 0; i < pattern.length; i++)
+            pattern[i] = buffer.get() & 0xFF;
+        pitch = buffer.get() & 0xFF;
+        cycles = buffer.getLong();
+        Chip8Mode mode = chip8.mode;
+        decodeTable = ProcessorCode.getTable(mode, chip8.quirks);
+        extended = mode != Chip8Mode.CHIP8;
+        xo = mode == Chip8Mode.XOCHIP;
+        sound(cycles);
+    }
+
+    protected static int getSaveSize() {
+        return 16 + 2 + 16 * 2 + 1 + 2 + 1 + 1 + 16 + 16 + 1 + 8;
     }
 
     protected boolean isBeeping() {
         return soundTimer > 0;
     }
 
-    private enum ProcessorCode {
+    protected enum ProcessorCode {
         //  _0NNN(0x0000, 0x0FFF),
         _00E0(0x00E0),
         _00EE(0x00EE),
+        _00CN(0x00C0, 0x000F, Chip8Mode.SCHIP),
+        _00DN(0x00D0, 0x000F, Chip8Mode.XOCHIP),
+        _00FB(0x00FB, 0x0000, Chip8Mode.SCHIP),
+        _00FC(0x00FC, 0x0000, Chip8Mode.SCHIP),
+        _00FD(0x00FD, 0x0000, Chip8Mode.SCHIP),
+        _00FE(0x00FE, 0x0000, Chip8Mode.SCHIP),
+        _00FF(0x00FF, 0x0000, Chip8Mode.SCHIP),
         _1NNN(0x1000, 0x0FFF),
         _2NNN(0x2000, 0x0FFF),
         _3XNN(0x3000, 0x0FFF),
         _4XNN(0x4000, 0x0FFF),
         _5XY0(0x5000, 0x0FF0),
+        _5XY2(0x5002, 0x0FF0, Chip8Mode.XOCHIP),
+        _5XY3(0x5003, 0x0FF0, Chip8Mode.XOCHIP),
         _6XNN(0x6000, 0x0FFF),
         _7XNN(0x7000, 0x0FFF),
         _8XY0(0x8000, 0x0FF0),
@@ -244,34 +558,122 @@ public class CPU {
         _DXYN(0xD000, 0x0FFF),
         _EX9E(0xE09E, 0x0F00),
         _EXA1(0xE0A1, 0x0F00),
+        _F000(0xF000, 0x0000, Chip8Mode.XOCHIP),
+        _FN01(0xF001, 0x0F00, Chip8Mode.XOCHIP),
+        _F002(0xF002, 0x0000, Chip8Mode.XOCHIP),
         _FX07(0xF007, 0x0F00),
         _FX0A(0xF00A, 0x0F00),
         _FX15(0xF015, 0x0F00),
         _FX18(0xF018, 0x0F00),
         _FX1E(0xF01E, 0x0F00),
         _FX29(0xF029, 0x0F00),
+        _FX30(0xF030, 0x0F00, Chip8Mode.SCHIP),
+        _FX3A(0xF03A, 0x0F00, Chip8Mode.XOCHIP),
         _FX33(0xF033, 0x0F00),
         _FX55(0xF055, 0x0F00),
-        _FX65(0xF065, 0x0F00);
+        _FX65(0xF065, 0x0F00),
+        _FX75(0xF075, 0x0F00, Chip8Mode.SCHIP),
+        _FX85(0xF085, 0x0F00, Chip8Mode.SCHIP),
+        _8XY6_VY(_8XY6, Chip8Quirk.SHIFT_VX, false),
+        _8XYE_VY(_8XYE, Chip8Quirk.SHIFT_VX, false),
+        _BXNN(_BNNN, Chip8Quirk.JUMP_VX, true),
+        _DXYN_WRAP(_DXYN, Chip8Quirk.WRAP_SPRITES, true),
+        _FX1E_NO_VF(_FX1E, Chip8Quirk.ADD_I_OVERFLOW, false),
+        _FX55_NO_INCREMENT(_FX55, Chip8Quirk.LOAD_STORE_INCREMENT, false),
+        _FX65_NO_INCREMENT(_FX65, Chip8Quirk.LOAD_STORE_INCREMENT, false);
+        private static final ProcessorCode[][] DECODE_TABLES = new ProcessorCode[Chip8Mode.values().length][];
+        private static final Map<Integer, ProcessorCode[]> QUIRK_TABLES = new ConcurrentHashMap<>();
+        private static final int DEFAULT_QUIRKS = Chip8Quirk.toMask(Chip8Quirk.defaults());
         private final int code;
         private final int uncde;
+        private final Chip8Mode mode;
+        private final ProcessorCode base;
+        private final Chip8Quirk quirk;
+        private final boolean quirkSet;
+
+        static {
+            ProcessorCode[] codes = values();
+            for (Chip8Mode mode : Chip8Mode.values()) {
+                ProcessorCode[] table = new ProcessorCode[0x10000];
+                for (int opcode = 0; opcode < table.length; opcode++) {
+                    for (ProcessorCode value : codes) {
+                        if (value.base == null && value.mode.ordinal() <= mode.ordinal() && value.code == (opcode & ~value.uncde)) {
+                            table[opcode] = value;
+                            break;
+                        }
+                    }
+                }
+                DECODE_TABLES[mode.ordinal()] = table;
+            }
+        }
 
         ProcessorCode(int code) {
             this(code, 0x0000);
         }
 
         ProcessorCode(int code, int uncde) {
+            this(code, uncde, Chip8Mode.CHIP8);
+        }
+
+        ProcessorCode(int code, int uncde, Chip8Mode mode) {
             this.code = code;
             this.uncde = uncde;
+            this.mode = mode;
+            this.base = null;
+            this.quirk = null;
+            this.quirkSet = false;
         }
 
-        private static ProcessorCode getByOpcode(int opcode) {
-            for (ProcessorCode value : values()) {
-                int oncode = opcode & ~value.uncde;
-                if (value.code == oncode)
-                    return value;
-            }
-            throw new IllegalStateException("Non existent processor code: " + Integer.toHexString(opcode));
+        /**
+         * Variant of an instruction, decoded in place of the base when the quirk is set or unset
+         *
+         * @param base     Base instruction
+         * @param quirk    Quirk
+         * @param quirkSet Whether the variant is used with the quirk set
+         */
+        ProcessorCode(ProcessorCode base, Chip8Quirk quirk, boolean quirkSet) {
+            this.code = base.code;
+            this.uncde = base.uncde;
+            this.mode = base.mode;
+            this.base = base;
+            this.quirk = quirk;
+            this.quirkSet = quirkSet;
+        }
+
+        /**
+         * Get the decode table of the mode
+         * Each mode only decodes the instructions it supports
+         *
+         * @param mode Mode
+         * @return Table indexed by opcode, null for unknown opcodes
+         */
+        protected static ProcessorCode[] getTable(Chip8Mode mode) {
+            return DECODE_TABLES[mode.ordinal()];
+        }
+
+        /**
+         * Get the decode table of the mode with the quirk variants resolved
+         * Tables are built once per mode and quirk set and shared
+         *
+         * @param mode   Mode
+         * @param quirks Quirk mask
+         * @return Table indexed by opcode, null for unknown opcodes
+         */
+        protected static ProcessorCode[] getTable(Chip8Mode mode, int quirks) {
+            if (quirks == DEFAULT_QUIRKS)
+                return DECODE_TABLES[mode.ordinal()];
+            return QUIRK_TABLES.computeIfAbsent(mode.ordinal() << 16 | quirks, key -> {
+                ProcessorCode[] table = DECODE_TABLES[mode.ordinal()].clone();
+                for (ProcessorCode variant : values()) {
+                    if (variant.base == null || ((quirks & (1 << variant.quirk.ordinal())) != 0) != variant.quirkSet)
+                        continue;
+                    for (int opcode = 0; opcode < table.length; opcode++) {
+                        if (table[opcode] == variant.base)
+                            table[opcode] = variant;
+                    }
+                }
+                return table;
+            });
         }
     }
 }
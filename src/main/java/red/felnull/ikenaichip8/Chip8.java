@@ -1,8 +1,14 @@
 package red.felnull.ikenaichip8;
 
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The IKISUGI CHIP-8 emulator library
@@ -10,23 +16,50 @@ import java.util.List;
  * @author MORIMORI0317
  */
 public class Chip8 {
+    private static final int SNAPSHOT_MAGIC = 0x43385353;
+    private static final int SNAPSHOT_VERSION = 4;
+    private static final int SNAPSHOT_HEADER_SIZE = 4 + 2 + 2 + 1 + 1 + 8 + 1 + 8;
     private final List<C8Listener> c8GFXListeners = new ArrayList<>();
     private final List<C8Listener> c8CycleListeners = new ArrayList<>();
-    protected boolean[] key = new boolean[16];
+    private final List<C8DisplayListener> c8DisplayListeners = new ArrayList<>();
+    private final DirtyRegion dirtyRegion = new DirtyRegion();
+    protected final AtomicInteger key = new AtomicInteger();
     protected boolean drawFlag = true;
-    protected boolean[] graphic = new boolean[64 * 32];
     private long cycleSpeed = 2;
+    private int instructionsPerSecond = 500;
+    private boolean throttle = true;
+    private long timerCredit;
     protected final Memory memory;
+    protected final Display display;
     private final CPU cpu;
-    private boolean run;
-    private boolean init;
-    private boolean resetFlag;
-    private byte[] romData;
+    protected BlockCache blockCache;
+    protected Chip8Metrics metrics;
+    protected Chip8Profiler profiler;
+    protected Chip8Audio audio;
+    private volatile boolean run;
+    private volatile boolean init;
+    private volatile boolean resetFlag;
+    private RomImage romImage;
     protected boolean nonThrow;
-    private boolean pause;
+    private volatile boolean pause;
+    private volatile boolean parked;
+    private final Object parkLock = new Object();
+    private Chip8Scheduler scheduler;
+    protected C8Random random = new Chip8Random();
+    private boolean seeded;
+    private long seed;
+    private final Queue<Integer> pendingKeys = new ConcurrentLinkedQueue<>();
+    private final Queue<Integer> pendingPixels = new ConcurrentLinkedQueue<>();
+    private boolean deterministic;
+    private InputLog inputLog;
+    private boolean replaying;
+    private long nextInputCycle = Long.MAX_VALUE;
+    protected Chip8Mode mode = Chip8Mode.CHIP8;
+    protected int quirks = Chip8Quirk.toMask(Chip8Quirk.defaults());
 
     public Chip8() {
         this.memory = new Memory(this);
+        this.display = new Display(this);
         this.cpu = new CPU(this);
     }
 
@@ -36,7 +69,71 @@ public class Chip8 {
      * @param rom Rom data
      */
     public void loadROM(byte[] rom) {
-        this.romData = rom;
+        loadROM(RomImage.of(rom));
+    }
+
+    /**
+     * Load rom data from the position to the limit of the buffer
+     * A read-only buffer, such as a slice of a RomLibrary, is used without copying
+     *
+     * @param rom Rom data
+     */
+    public void loadROM(ByteBuffer rom) {
+        loadROM(RomImage.of(rom));
+    }
+
+    /**
+     * Load rom image
+     * Emulators loading the same image share its memory pages until they write to them
+     *
+     * @param image Rom image
+     */
+    public void loadROM(RomImage image) {
+        this.romImage = image;
+    }
+
+    /**
+     * Set the instruction set and machine layout
+     * Takes effect at the next initialize or reset, defalt is CHIP8
+     *
+     * @param mode Mode
+     */
+    public void setMode(Chip8Mode mode) {
+        if (run)
+            throw new IllegalStateException("Can not change the mode while running");
+        this.mode = mode;
+        this.init = false;
+    }
+
+    /**
+     * Get the instruction set and machine layout
+     *
+     * @return Mode
+     */
+    public Chip8Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Set the interpreter quirks
+     * Takes effect at the next initialize or reset, defalt is Chip8Quirk.defaults()
+     *
+     * @param quirks Quirks
+     */
+    public void setQuirks(Set<Chip8Quirk> quirks) {
+        if (run)
+            throw new IllegalStateException("Can not change the quirks while running");
+        this.quirks = Chip8Quirk.toMask(quirks);
+        this.init = false;
+    }
+
+    /**
+     * Get the interpreter quirks
+     *
+     * @return Quirks, a copy
+     */
+    public EnumSet<Chip8Quirk> getQuirks() {
+        return Chip8Quirk.fromMask(quirks);
     }
 
     /**
@@ -54,12 +151,30 @@ public class Chip8 {
      */
     public void init() {
         if (!init) {
-            if (romData == null)
+            if (romImage == null)
                 throw new IllegalStateException("No rom data");
+            memory.init(romImage, mode);
             cpu.init();
-            memory.init(romData);
-            Arrays.fill(graphic, false);
-            Arrays.fill(key, false);
+            if (blockCache != null)
+                blockCache.clear();
+            display.init(mode);
+            key.set(0);
+            if (seeded)
+                random = new Chip8Random(seed);
+            if (inputLog != null) {
+                if (replaying) {
+                    inputLog.rewind();
+                    nextInputCycle = inputLog.peekCycle();
+                } else {
+                    inputLog.clear();
+                }
+            }
+            pendingKeys.clear();
+            pendingPixels.clear();
+            display.publish();
+            timerCredit = 0;
+            if (profiler != null)
+                profiler.reset();
             init = true;
         }
     }
@@ -70,6 +185,7 @@ public class Chip8 {
     public void reset() {
         if (run) {
             resetFlag = true;
+            wake();
         } else {
             init = false;
             init();
@@ -80,43 +196,194 @@ public class Chip8 {
      * Be sure to initialize before running
      */
     public void cycle() {
+        if (deterministic)
+            pollInput();
         cpu.cycle();
+        display.publish();
+        advanceAudio();
+    }
+
+    /**
+     * Execute the given number of instructions in a tight loop
+     * The timers follow the 60Hz virtual clock of setInstructionsPerSecond and tick inside the batch,
+     * the result is the same as calling runFrame for the same number of instructions
+     * Listeners are called once after the batch
+     * Be sure to initialize before running
+     *
+     * @param cycles Number of instructions
+     * @return Number of executed instructions
+     */
+    public long runCycles(long cycles) {
+        long executed = executeBatch(cycles);
+        notifyListeners();
+        return executed;
+    }
+
+    /**
+     * Execute instructions until the next 60Hz timer tick
+     * This is one frame of setInstructionsPerSecond / 60 instructions
+     * Listeners are called once after the frame
+     * Be sure to initialize before running
+     *
+     * @return Number of executed instructions
+     */
+    public long runFrame() {
+        long executed = executeBatch(cyclesUntilTick());
+        notifyListeners();
+        return executed;
+    }
+
+    /**
+     * Execute until the end of the current basic block
+     * Executes a single instruction when the block cache is disabled
+     * Be sure to initialize before running
+     *
+     * @return Number of executed instructions
+     */
+    public int cycleBlock() {
+        if (blockCache == null) {
+            cycle();
+            return 1;
+        }
+        if (deterministic)
+            pollInput();
+        int executed = cpu.cycleBlock(blockCache, true, nextInputCycle - cpu.getCycles());
+        display.publish();
+        advanceAudio();
+        return executed;
+    }
+
+    /**
+     * Use the block cache execution engine
+     * Straight-line code is decoded once and reused until it is overwritten
+     * Defalt is false, it only saves the decode and is not measurably faster than the interpreter, see the README baseline
+     *
+     * @param useBlockCache Whether to use block cache
+     */
+    public void setBlockCache(boolean useBlockCache) {
+        if (useBlockCache && blockCache == null)
+            this.blockCache = new BlockCache(this);
+        else if (!useBlockCache)
+            this.blockCache = null;
+    }
+
+    /**
+     * Enable or disable execution metrics
+     * Has no effect when the JVM runs with -Dikenaichip8.metrics=false
+     *
+     * @param enable Whether to collect metrics
+     */
+    public void setMetrics(boolean enable) {
+        if (enable && Chip8Metrics.ENABLED && metrics == null)
+            this.metrics = new Chip8Metrics();
+        else if (!enable)
+            this.metrics = null;
+    }
+
+    /**
+     * Get the execution metrics
+     *
+     * @return Metrics, null when disabled
+     */
+    public Chip8Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the hot spot profiler
+     *
+     * @param profiler Profiler, null to stop profiling
+     */
+    public void setProfiler(Chip8Profiler profiler) {
+        this.profiler = profiler;
+    }
+
+    /**
+     * Set the sound output
+     * Sound timer transitions are placed in time with setInstructionsPerSecond
+     * cycle and run tick the timers on every instruction, so when using them set setInstructionsPerSecond to the cycle speed in Hz
+     *
+     * @param audio Audio, null to stop recording sound
+     */
+    public void setAudio(Chip8Audio audio) {
+        this.audio = audio;
+        if (audio != null) {
+            audio.advance(cpu.getCycles(), instructionsPerSecond);
+            cpu.sound();
+        }
+    }
+
+    /**
+     * Whether the block cache is used
+     *
+     * @return Is block cache
+     */
+    public boolean isBlockCache() {
+        return blockCache != null;
     }
 
     /**
      * Start emulation
      */
     public void run() {
+        runLoop(false);
+    }
+
+    /**
+     * Start emulation in turbo mode
+     * Runs runFrame in a loop, the timers tick once per frame
+     * Listeners are called once per frame
+     */
+    public void runTurbo() {
+        runLoop(true);
+    }
+
+    private void runLoop(boolean turbo) {
         if (run)
             return;
 
         this.run = true;
         if (!init)
             init();
+        Chip8Metrics metrics = this.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null)
+            metrics.setRequestedRate(turbo ? (throttle ? instructionsPerSecond : 0) : 1000d / cycleSpeed);
+        long frameTime = System.nanoTime();
         try {
             while (run) {
                 if (pause) {
-                    Thread.sleep(10);
+                    park();
+                    frameTime = System.nanoTime();
                     continue;
                 }
 
-                if (resetFlag) {
-                    init = false;
-                    init();
-                    resetFlag = false;
+                checkReset();
+
+                if (turbo) {
+                    turboFrame();
+                    if (!throttle && !deterministic)
+                        fastForward();
+                    if (tryPark()) {
+                        park();
+                        frameTime = System.nanoTime();
+                    } else if (throttle) {
+                        frameTime = syncFrame(frameTime);
+                    }
+                    continue;
                 }
+
+                pollPixels();
                 try {
                     cycle();
                 } catch (Exception ex) {
                     if (!nonThrow)
                         throw ex;
                 }
-                if (drawFlag) {
-                    c8GFXListeners.forEach(n -> n.update(this));
-                    drawFlag = false;
-                }
-                c8CycleListeners.forEach(n -> n.update(this));
-                Thread.sleep(cycleSpeed);
+                notifyListeners();
+                if (tryPark())
+                    park();
+                else
+                    sleep(cycleSpeed * 1000000L);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -125,35 +392,420 @@ public class Chip8 {
         }
     }
 
+    protected void runSlice() {
+        if (!run || pause)
+            return;
+        checkReset();
+        turboFrame();
+    }
+
+    protected void attach(Chip8Scheduler scheduler) {
+        if (run)
+            throw new IllegalStateException("Already running");
+        this.run = true;
+        this.scheduler = scheduler;
+        try {
+            if (!init)
+                init();
+        } catch (RuntimeException ex) {
+            detach(scheduler);
+            throw ex;
+        }
+        Chip8Metrics metrics = this.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null)
+            metrics.setRequestedRate(instructionsPerSecond);
+    }
+
+    protected void detach(Chip8Scheduler scheduler) {
+        if (this.scheduler == scheduler) {
+            this.scheduler = null;
+            this.run = false;
+        }
+    }
+
+    private void checkReset() {
+        if (resetFlag) {
+            init = false;
+            init();
+            resetFlag = false;
+        }
+    }
+
+    private void turboFrame() {
+        Chip8Metrics metrics = this.metrics;
+        long start = Chip8Metrics.ENABLED && metrics != null ? System.nanoTime() : 0;
+        try {
+            executeBatch(cyclesUntilTick());
+        } catch (Exception ex) {
+            if (!nonThrow)
+                throw ex;
+        }
+        notifyListeners();
+        if (Chip8Metrics.ENABLED && metrics != null)
+            metrics.frameTime(System.nanoTime() - start);
+    }
+
+    private long cyclesUntilTick() {
+        return Math.max(1, (instructionsPerSecond - timerCredit + 59) / 60);
+    }
+
+    private long executeBatch(long cycles) {
+        pollPixels();
+        if (deterministic)
+            pollInput();
+        long executed = 0;
+        try {
+            while (executed < cycles) {
+                if (cpu.getCycles() >= nextInputCycle)
+                    pollInput();
+                long limit = Math.min(Math.min(cycles - executed, nextInputCycle - cpu.getCycles()), cyclesUntilTick());
+                long done;
+                if (blockCache != null) {
+                    done = cpu.cycleBlock(blockCache, false, limit);
+                } else {
+                    cpu.step();
+                    done = 1;
+                }
+                if (cpu.idle && done < limit)
+                    done += cpu.skipIdle(limit - done);
+                executed += done;
+                tickTimers(done);
+            }
+        } finally {
+            advanceAudio();
+        }
+        return executed;
+    }
+
+    private void tickTimers(long executed) {
+        timerCredit += executed * 60;
+        while (timerCredit >= instructionsPerSecond) {
+            cpu.tickTimers();
+            timerCredit -= instructionsPerSecond;
+        }
+    }
+
+    private void advanceAudio() {
+        Chip8Audio audio = this.audio;
+        if (audio != null)
+            audio.advance(cpu.getCycles(), instructionsPerSecond);
+    }
+
+    private void notifyListeners() {
+        Chip8Metrics metrics = this.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null) {
+            long start = System.nanoTime();
+            notifyGFX();
+            c8CycleListeners.forEach(n -> n.update(this));
+            metrics.listeners(System.nanoTime() - start);
+            return;
+        }
+        notifyGFX();
+        c8CycleListeners.forEach(n -> n.update(this));
+    }
+
+    private void notifyGFX() {
+        if (!drawFlag)
+            return;
+        display.publish();
+        Chip8Metrics metrics = this.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null)
+            metrics.frame();
+        c8GFXListeners.forEach(n -> n.update(this));
+        display.collectDirty(dirtyRegion);
+        if (!dirtyRegion.isEmpty())
+            c8DisplayListeners.forEach(n -> n.update(this, dirtyRegion));
+        drawFlag = false;
+    }
+
+    private void pollInput() {
+        if (replaying) {
+            pendingKeys.clear();
+            while (cpu.getCycles() >= nextInputCycle) {
+                applyKey(inputLog.next());
+                nextInputCycle = inputLog.peekCycle();
+            }
+            return;
+        }
+        Integer event;
+        while ((event = pendingKeys.poll()) != null) {
+            applyKey(event);
+            if (inputLog != null)
+                inputLog.add(cpu.getCycles(), event);
+        }
+    }
+
+    /**
+     * Park when waiting for a key or halted with no timers running
+     * Wakes by pressKey, releaseKey, setGraphic, reset, unpause or stop
+     *
+     * @return parked
+     */
+    protected boolean tryPark() {
+        if (replaying || !cpu.isParkable())
+            return false;
+        parked = true;
+        if (pause || !run || resetFlag || !cpu.isParkable() || !pendingKeys.isEmpty() || !pendingPixels.isEmpty()) {
+            parked = false;
+            return false;
+        }
+        return true;
+    }
+
+    private void park() throws InterruptedException {
+        synchronized (parkLock) {
+            while (run && (pause || (parked && !resetFlag)))
+                parkLock.wait();
+            parked = false;
+        }
+    }
+
+    private void wake() {
+        if (!parked)
+            return;
+        wakeAll();
+        Chip8Scheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.update(this);
+    }
+
+    private void wakeAll() {
+        synchronized (parkLock) {
+            parked = false;
+            parkLock.notifyAll();
+        }
+    }
+
+    protected boolean isParked() {
+        return parked;
+    }
+
+    private void fastForward() {
+        int ticks = cpu.fastForwardTimers(instructionsPerSecond / 60);
+        if (ticks > 0)
+            cpu.skipCycles((long) ticks * instructionsPerSecond / 60);
+    }
+
+    private void pollPixels() {
+        Integer edit;
+        while ((edit = pendingPixels.poll()) != null) {
+            display.set(edit & 0xFF, (edit >> 8) & 0xFF, (edit & 0x10000) != 0);
+            drawFlag = true;
+        }
+    }
+
+    private void applyKey(int event) {
+        if ((event & 0x10) != 0)
+            key.accumulateAndGet(1 << (event & 0xF), (a, b) -> a | b);
+        else
+            key.accumulateAndGet(~(1 << (event & 0xF)), (a, b) -> a & b);
+    }
+
+    private long syncFrame(long frameTime) throws InterruptedException {
+        long frameNanos = 1000000000L / 60;
+        long nextFrameTime = frameTime + frameNanos;
+        long wait = nextFrameTime - System.nanoTime();
+        if (wait > 0) {
+            sleep(wait);
+            return nextFrameTime;
+        }
+        return wait < -frameNanos ? System.nanoTime() : nextFrameTime;
+    }
+
+    private void sleep(long nanos) throws InterruptedException {
+        Chip8Metrics metrics = this.metrics;
+        if (Chip8Metrics.ENABLED && metrics != null) {
+            long start = System.nanoTime();
+            Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+            metrics.sleep(nanos, System.nanoTime() - start);
+            return;
+        }
+        Thread.sleep(nanos / 1000000L, (int) (nanos % 1000000L));
+    }
+
     /**
      * Pause emulation
      */
     public void pause() {
         this.pause = true;
+        Chip8Scheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.update(this);
     }
 
     /**
-     * Get if drawn
-     * (64*32)
+     * Get if drawn in any plane of the last published frame
+     * (getWidth*getHeight)
      *
      * @param x Xpos
      * @param y Ypos
      * @return drawn
      */
     public boolean getGraphic(int x, int y) {
-        return graphic[(y * 64) + x];
+        return display.getPublished(x, y);
+    }
+
+    /**
+     * Get the width of the last published frame
+     * 64, or 128 in the SCHIP and XO-CHIP hi-res mode
+     * A frame may be published between this and a getFrame call, use getFrame with a FrameInfo to get both together
+     *
+     * @return Width
+     */
+    public int getWidth() {
+        return display.getPublishedWidth();
+    }
+
+    /**
+     * Get the height of the last published frame
+     * 32, or 64 in the SCHIP and XO-CHIP hi-res mode
+     * A frame may be published between this and a getFrame call, use getFrame with a FrameInfo to get both together
+     *
+     * @return Height
+     */
+    public int getHeight() {
+        return display.getPublishedHeight();
+    }
+
+    /**
+     * Get the number of bit planes of the last published frame
+     * 2 in XO-CHIP mode, otherwise 1
+     * A frame may be published between this and a getFrame call, use getFrame with a FrameInfo to get both together
+     *
+     * @return Plane count
+     */
+    public int getPlanes() {
+        return display.getPublishedPlanes();
+    }
+
+    /**
+     * Copy the last published frame
+     * One long per 64 pixels of a row, the most significant bit of the first long is x = 0
+     * Each plane is getHeight rows, the planes follow one another
+     * The copy is always a complete frame, even while the emulator is running on another thread
+     *
+     * @param rows Destination, at least 32 long for CHIP8 and 256 long for every mode
+     * @return Number of long copied
+     */
+    public int getFrame(long[] rows) {
+        return Display.length(display.copyPublished(rows));
+    }
+
+    /**
+     * Copy the last published frame and its format
+     * Same as getFrame(long[]), the format is read together with the rows
+     *
+     * @param rows Destination, at least 32 long for CHIP8 and 256 long for every mode
+     * @param info Receives the width, height and plane count of the copied frame
+     * @return Number of long copied
+     */
+    public int getFrame(long[] rows, FrameInfo info) {
+        int format = display.copyPublished(rows);
+        info.set(format);
+        return Display.length(format);
+    }
+
+    /**
+     * Copy the last published frame into a LongBuffer
+     * Writes from the current position, same layout as getFrame(long[])
+     *
+     * @param rows Destination, at least 32 long remaining for CHIP8 and 256 long for every mode
+     * @return Number of long copied
+     */
+    public int getFrame(LongBuffer rows) {
+        return Display.length(display.copyPublished(rows));
+    }
+
+    /**
+     * Copy the last published frame and its format into a LongBuffer
+     * Same as getFrame(LongBuffer), the format is read together with the rows
+     *
+     * @param rows Destination, at least 32 long remaining for CHIP8 and 256 long for every mode
+     * @param info Receives the width, height and plane count of the copied frame
+     * @return Number of long copied
+     */
+    public int getFrame(LongBuffer rows, FrameInfo info) {
+        int format = display.copyPublished(rows);
+        info.set(format);
+        return Display.length(format);
     }
 
     /**
-     * Set drawn
-     * (64*32)
+     * Copy the last published frame packed 1 bit per pixel
+     * Writes from the current position, getWidth/8 bytes per row and the planes one after another
+     * The most significant bit of the first byte of a row is x = 0, regardless of the buffer order
+     *
+     * @param buffer Destination, at least 256 bytes remaining for CHIP8 and 2048 bytes for every mode
+     * @return Number of bytes copied
+     */
+    public int getFrame(ByteBuffer buffer) {
+        return Display.length(display.copyPublished(buffer)) * 8;
+    }
+
+    /**
+     * Copy the last published frame and its format packed 1 bit per pixel
+     * Same as getFrame(ByteBuffer), the format is read together with the rows
+     *
+     * @param buffer Destination, at least 256 bytes remaining for CHIP8 and 2048 bytes for every mode
+     * @param info   Receives the width, height and plane count of the copied frame
+     * @return Number of bytes copied
+     */
+    public int getFrame(ByteBuffer buffer, FrameInfo info) {
+        int format = display.copyPublished(buffer);
+        info.set(format);
+        return Display.length(format) * 8;
+    }
+
+    /**
+     * Draw the last published frame into an int array, one int per pixel
+     * Each pixel is a scale * scale square, so the frame is (getWidth*scale)*(getHeight*scale)
+     * Pixels drawn in any plane get onColor
+     *
+     * @param pixels   Destination
+     * @param offset   Index of the top left pixel
+     * @param stride   Ints per destination row, at least getWidth*scale
+     * @param scale    Scale factor
+     * @param offColor Color of not drawn pixels
+     * @param onColor  Color of drawn pixels
+     */
+    public void getFrame(int[] pixels, int offset, int stride, int scale, int offColor, int onColor) {
+        display.copyPublished(pixels, offset, stride, stride, Integer.MAX_VALUE, scale, offColor, onColor, onColor, onColor);
+    }
+
+    /**
+     * Draw the last published frame into an int array with a palette
+     * The plane bits of a pixel select the color, plane 0 is the low bit
+     *
+     * @param pixels  Destination
+     * @param offset  Index of the top left pixel
+     * @param stride  Ints per destination row, at least getWidth*scale
+     * @param scale   Scale factor
+     * @param palette 2 colors, or 4 colors for the XO-CHIP planes
+     */
+    public void getFrame(int[] pixels, int offset, int stride, int scale, int[] palette) {
+        int color3 = palette[palette.length > 2 ? 3 : 1];
+        int color2 = palette[palette.length > 2 ? 2 : 1];
+        display.copyPublished(pixels, offset, stride, stride, Integer.MAX_VALUE, scale, palette[0], palette[1], color2, color3);
+    }
+
+    /**
+     * Set drawn in the first plane
+     * While running the change is applied by the emulator thread before the next instruction
+     * (getWidth*getHeight)
      *
      * @param x Xpos
      * @param y YposF
      * @return drawn
      */
     public void setGraphic(int x, int y, boolean draw) {
-        graphic[(y * 64) + x] = draw;
+        if (run) {
+            pendingPixels.add(x | y << 8 | (draw ? 0x10000 : 0));
+            wake();
+        } else {
+            display.set(x, y, draw);
+            display.publish();
+            drawFlag = true;
+        }
     }
 
     /**
@@ -161,6 +813,10 @@ public class Chip8 {
      */
     public void unpause() {
         this.pause = false;
+        wakeAll();
+        Chip8Scheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.update(this);
     }
 
     /**
@@ -169,7 +825,17 @@ public class Chip8 {
     public void runAsync() {
         if (run)
             return;
-        RunThread runThread = new RunThread();
+        RunThread runThread = new RunThread(false);
+        runThread.start();
+    }
+
+    /**
+     * Start emulation async in turbo mode
+     */
+    public void runTurboAsync() {
+        if (run)
+            return;
+        RunThread runThread = new RunThread(true);
         runThread.start();
     }
 
@@ -179,6 +845,10 @@ public class Chip8 {
     public void stop() {
         this.run = false;
         this.init = false;
+        wakeAll();
+        Chip8Scheduler scheduler = this.scheduler;
+        if (scheduler != null)
+            scheduler.remove(this);
     }
 
     /**
@@ -191,6 +861,16 @@ public class Chip8 {
         c8GFXListeners.add(listener);
     }
 
+    /**
+     * Added display listener
+     * Called with the region changed since the last notification
+     *
+     * @param listener display listener
+     */
+    public void addDisplayListener(C8DisplayListener listener) {
+        c8DisplayListeners.add(listener);
+    }
+
     /**
      * Added cycle listener
      * Called when the one cycle
@@ -201,6 +881,112 @@ public class Chip8 {
         c8CycleListeners.add(listener);
     }
 
+    /**
+     * Get the size of a snapshot in bytes
+     *
+     * @return Snapshot size
+     */
+    public int getSnapshotSize() {
+        return SNAPSHOT_HEADER_SIZE + CPU.getSaveSize() + memory.getSaveSize() + display.getSaveSize();
+    }
+
+    /**
+     * Write the complete machine state to the buffer
+     * Includes the instruction count, the timer clock and the state of the seeded random source,
+     * a source set by setRandom is not saved
+     * Writes getSnapshotSize() bytes at the buffer position and does not allocate
+     *
+     * @param buffer Destination buffer
+     */
+    public void snapshot(ByteBuffer buffer) {
+        buffer.putInt(SNAPSHOT_MAGIC);
+        buffer.putShort((short) SNAPSHOT_VERSION);
+        buffer.putShort((short) key.get());
+        buffer.put((byte) mode.ordinal());
+        buffer.put((byte) quirks);
+        buffer.putLong(timerCredit);
+        C8Random random = this.random;
+        buffer.put((byte) (random instanceof Chip8Random ? 1 : 0));
+        buffer.putLong(random instanceof Chip8Random ? ((Chip8Random) random).getState() : 0);
+        cpu.save(buffer);
+        memory.save(buffer);
+        display.save(buffer);
+    }
+
+    /**
+     * Write the complete machine state to the array
+     *
+     * @param data Destination array
+     */
+    public void snapshot(byte[] data) {
+        snapshot(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Restore the machine state written by snapshot
+     * The whole snapshot is checked first, the machine is unchanged when it is rejected
+     * While replaying the log continues from the restored instruction, while recording the later events are dropped
+     * The machine is initialized afterwards, even without rom data
+     *
+     * @param buffer Source buffer
+     */
+    public void restore(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < SNAPSHOT_HEADER_SIZE || buffer.getInt(start) != SNAPSHOT_MAGIC)
+            throw new IllegalStateException("Not a snapshot");
+        int version = buffer.getShort(start + 4);
+        if (version != SNAPSHOT_VERSION)
+            throw new IllegalStateException("Unsupported snapshot version: " + version);
+        int snapshotMode = buffer.get(start + 8);
+        if (snapshotMode != mode.ordinal())
+            throw new IllegalStateException("Snapshot mode mismatch: " + (snapshotMode >= 0 && snapshotMode < Chip8Mode.values().length ? Chip8Mode.values()[snapshotMode] : snapshotMode));
+        int snapshotQuirks = buffer.get(start + 9) & 0xFF;
+        if (snapshotQuirks != quirks)
+            throw new IllegalStateException("Snapshot quirks mismatch: " + Chip8Quirk.fromMask(snapshotQuirks));
+        if (buffer.remaining() < getSnapshotSize())
+            throw new IllegalStateException("Snapshot too short: " + buffer.remaining() + " < " + getSnapshotSize());
+        int memoryStart = start + SNAPSHOT_HEADER_SIZE + CPU.getSaveSize();
+        memory.check(buffer, memoryStart);
+        display.check(buffer, memoryStart + memory.getSaveSize());
+
+        buffer.position(start + 6);
+        key.set(buffer.getShort() & 0xFFFF);
+        buffer.get();
+        buffer.get();
+        timerCredit = buffer.getLong();
+        boolean savedRandom = buffer.get() != 0;
+        long randomState = buffer.getLong();
+        C8Random random = this.random;
+        if (savedRandom && random instanceof Chip8Random)
+            ((Chip8Random) random).setState(randomState);
+        cpu.load(buffer);
+        memory.load(buffer);
+        display.load(buffer);
+        display.publish();
+        drawFlag = true;
+        if (blockCache != null)
+            blockCache.clear();
+        if (inputLog != null) {
+            if (replaying) {
+                inputLog.seek(cpu.getCycles());
+                nextInputCycle = inputLog.peekCycle();
+            } else {
+                inputLog.truncate(cpu.getCycles());
+            }
+        }
+        init = true;
+        resetFlag = false;
+    }
+
+    /**
+     * Restore the machine state written by snapshot
+     *
+     * @param data Source array
+     */
+    public void restore(byte[] data) {
+        restore(ByteBuffer.wrap(data));
+    }
+
     /**
      * Whether there is a beep
      *
@@ -238,7 +1024,11 @@ public class Chip8 {
      * @param keyNum key number
      */
     public void pressKey(int keyNum) {
-        key[keyNum] = true;
+        if (deterministic)
+            pendingKeys.add((keyNum & 0xF) | 0x10);
+        else
+            applyKey((keyNum & 0xF) | 0x10);
+        wake();
     }
 
     /**
@@ -251,7 +1041,118 @@ public class Chip8 {
      * @param keyNum key number
      */
     public void releaseKey(int keyNum) {
-        key[keyNum] = false;
+        if (deterministic)
+            pendingKeys.add(keyNum & 0xF);
+        else
+            applyKey(keyNum & 0xF);
+        wake();
+    }
+
+    /**
+     * Whether the key is pressed
+     *
+     * @param keyNum key number
+     * @return Is pressed
+     */
+    public boolean isKeyPressed(int keyNum) {
+        return (key.get() & (1 << keyNum)) != 0;
+    }
+
+    /**
+     * Set the random number source used by CXNN
+     * Only the state of a Chip8Random is saved in snapshots
+     *
+     * @param random Random source
+     */
+    public void setRandom(C8Random random) {
+        this.random = random;
+        this.seeded = false;
+    }
+
+    /**
+     * Use a seeded random number source
+     * It is seeded again on every reset, so runs with the same seed and input are reproducible
+     *
+     * @param seed Random seed
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+        this.seeded = true;
+        this.random = new Chip8Random(seed);
+    }
+
+    /**
+     * Record key input into the log
+     * The machine is reset at the next frame when running, otherwise on the next init
+     * Key events are applied and logged between instructions at batch boundaries
+     * Call before starting emulation or from the emulator thread
+     *
+     * @param log Input log, cleared on every reset
+     */
+    public void record(InputLog log) {
+        startInputLog(log, false);
+    }
+
+    /**
+     * Replay key input from the log
+     * The machine is reset at the next frame when running, otherwise on the next init
+     * Each event is applied at its recorded instruction index, live key input is ignored
+     * Call before starting emulation or from the emulator thread
+     *
+     * @param log Input log
+     */
+    public void replay(InputLog log) {
+        startInputLog(log, true);
+    }
+
+    /**
+     * Stop recording or replaying and go back to live key input
+     */
+    public void stopInputLog() {
+        this.deterministic = false;
+        this.inputLog = null;
+        this.replaying = false;
+        this.nextInputCycle = Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether every replayed event has been applied
+     *
+     * @return Is replay done
+     */
+    public boolean isReplayDone() {
+        return replaying && nextInputCycle == Long.MAX_VALUE;
+    }
+
+    /**
+     * Whether the program has stopped
+     * True on a jump to itself (1NNN), or on exit (00FD) in the SCHIP and XO-CHIP modes
+     *
+     * @return Is halted
+     */
+    public boolean isHalted() {
+        return cpu.isHalted();
+    }
+
+    /**
+     * Get the number of executed instructions since the last reset
+     *
+     * @return Instruction count
+     */
+    public long getCycles() {
+        return cpu.getCycles();
+    }
+
+    private void startInputLog(InputLog log, boolean replay) {
+        setSeed(log.getSeed());
+        this.deterministic = true;
+        this.inputLog = log;
+        this.replaying = replay;
+        this.nextInputCycle = Long.MAX_VALUE;
+        if (run)
+            resetFlag = true;
+        else
+            init = false;
     }
 
     /**
@@ -282,18 +1183,74 @@ public class Chip8 {
         this.cycleSpeed = (long) (1d / speedHz * 1000d);
     }
 
+    /**
+     * Get the instruction rate used by turbo mode
+     *
+     * @return Instructions per second
+     */
+    public int getInstructionsPerSecond() {
+        return instructionsPerSecond;
+    }
+
+    /**
+     * Set the instruction rate used by turbo mode
+     * The timers tick every (instructionsPerSecond / 60) instructions
+     * Defalt is 500
+     *
+     * @param instructionsPerSecond Instructions per second
+     */
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        if (instructionsPerSecond <= 0)
+            throw new IllegalArgumentException("Instructions per second must be positive: " + instructionsPerSecond);
+        this.instructionsPerSecond = instructionsPerSecond;
+    }
+
+    /**
+     * Whether turbo mode waits for the wall clock between frames
+     *
+     * @return Is throttle
+     */
+    public boolean isThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Set whether turbo mode waits for the wall clock between frames
+     * Without throttle the frames run back to back for batch work
+     * Defalt is true
+     *
+     * @param throttle Whether to throttle
+     */
+    public void setThrottle(boolean throttle) {
+        this.throttle = throttle;
+    }
+
     private class RunThread extends Thread {
-        public RunThread() {
+        private final boolean turbo;
+
+        public RunThread(boolean turbo) {
+            this.turbo = turbo;
             setName("Chip8 Runner");
         }
 
         @Override
         public void run() {
-            Chip8.this.run();
+            if (turbo)
+                Chip8.this.runTurbo();
+            else
+                Chip8.this.run();
         }
     }
 
     public static interface C8Listener {
         void update(Chip8 chip8);
     }
+
+    public static interface C8Random {
+        int nextInt(int bound);
+    }
+
+    public static interface C8DisplayListener {
+        void update(Chip8 chip8, DirtyRegion region);
+    }
 }
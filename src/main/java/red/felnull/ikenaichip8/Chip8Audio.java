@@ -0,0 +1,220 @@
+package red.felnull.ikenaichip8;
+
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Pull based sound output
+ * The emulator records every sound timer transition with its cycle, the audio thread reads them back as 16 bit mono PCM
+ * Cycles are turned into time with setInstructionsPerSecond of the emulator
+ * <p>
+ * Plays a square wave, or the XO-CHIP pattern buffer at the FX3A pitch once a pattern is loaded
+ * Reading more samples than have been emulated holds the current tone,
+ * a transition that arrives after its samples were read is played at once
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Audio {
+    private static final int MAX_EVENTS = 256;
+    private final int sampleRate;
+    private final long[] eventCycles = new long[MAX_EVENTS];
+    private final boolean[] eventOn = new boolean[MAX_EVENTS];
+    private final int[] eventPitches = new int[MAX_EVENTS];
+    private final long[] eventPatternHigh = new long[MAX_EVENTS];
+    private final long[] eventPatternLow = new long[MAX_EVENTS];
+    private int eventHead;
+    private int eventCount;
+    private long lastCycle;
+    private long headCycle;
+    private int instructionsPerSecond = 500;
+    private long position;
+    private boolean on;
+    private int pitch = 64;
+    private long patternHigh;
+    private long patternLow;
+    private double phase;
+    private double step;
+    private double frequency = 440;
+    private int amplitude = 4096;
+    private short[] scratch = new short[0];
+
+    /**
+     * @param sampleRate Samples per second
+     */
+    public Chip8Audio(int sampleRate) {
+        if (sampleRate <= 0)
+            throw new IllegalArgumentException("Sample rate must be positive: " + sampleRate);
+        this.sampleRate = sampleRate;
+        updateStep();
+    }
+
+    protected synchronized void sound(long cycle, boolean on, int pitch, int[] pattern) {
+        long high = 0;
+        long low = 0;
+        for (int i = 0; i < 8; i++) {
+            high = high << 8 | pattern[i];
+            low = low << 8 | pattern[i + 8];
+        }
+        if (cycle < lastCycle)
+            restart(cycle);
+        lastCycle = cycle;
+        headCycle = Math.max(headCycle, cycle);
+
+        int last = (eventHead + eventCount - 1) % MAX_EVENTS;
+        boolean lastOn = eventCount == 0 ? this.on : eventOn[last];
+        int lastPitch = eventCount == 0 ? this.pitch : eventPitches[last];
+        long lastHigh = eventCount == 0 ? this.patternHigh : eventPatternHigh[last];
+        long lastLow = eventCount == 0 ? this.patternLow : eventPatternLow[last];
+        if (on == lastOn && (!on || (pitch == lastPitch && high == lastHigh && low == lastLow)))
+            return;
+
+        if (eventCount == MAX_EVENTS)
+            apply();
+        int index = (eventHead + eventCount) % MAX_EVENTS;
+        eventCycles[index] = cycle;
+        eventOn[index] = on;
+        eventPitches[index] = pitch;
+        eventPatternHigh[index] = high;
+        eventPatternLow[index] = low;
+        eventCount++;
+    }
+
+    protected synchronized void advance(long cycle, int instructionsPerSecond) {
+        if (cycle < lastCycle)
+            restart(cycle);
+        lastCycle = cycle;
+        headCycle = cycle;
+        this.instructionsPerSecond = instructionsPerSecond;
+    }
+
+    private void restart(long cycle) {
+        while (eventCount > 0)
+            apply();
+        position = cycle * sampleRate;
+        headCycle = cycle;
+    }
+
+    private void apply() {
+        on = eventOn[eventHead];
+        pitch = eventPitches[eventHead];
+        patternHigh = eventPatternHigh[eventHead];
+        patternLow = eventPatternLow[eventHead];
+        eventHead = (eventHead + 1) % MAX_EVENTS;
+        eventCount--;
+        updateStep();
+    }
+
+    private void updateStep() {
+        if (patternHigh == 0 && patternLow == 0) {
+            step = frequency / sampleRate;
+            phase %= 1;
+        } else {
+            step = 4000 * Math.pow(2, (pitch - 64) / 48d) / sampleRate;
+        }
+    }
+
+    /**
+     * Fill the array with samples
+     *
+     * @param samples Destination
+     * @param offset  First sample index
+     * @param length  Number of samples
+     */
+    public synchronized void read(short[] samples, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            while (eventCount > 0 && eventCycles[eventHead] * sampleRate <= position)
+                apply();
+            int run = end - i;
+            if (eventCount > 0) {
+                long until = (eventCycles[eventHead] * sampleRate - position + instructionsPerSecond - 1) / instructionsPerSecond;
+                run = (int) Math.min(run, until);
+            }
+            if (!on) {
+                for (int j = 0; j < run; j++)
+                    samples[i + j] = 0;
+            } else if (patternHigh == 0 && patternLow == 0) {
+                for (int j = 0; j < run; j++) {
+                    samples[i + j] = (short) (phase < 0.5 ? amplitude : -amplitude);
+                    phase += step;
+                    if (phase >= 1)
+                        phase -= 1;
+                }
+            } else {
+                for (int j = 0; j < run; j++) {
+                    int bit = (int) phase;
+                    long bits = bit < 64 ? patternHigh << bit : patternLow << (bit - 64);
+                    samples[i + j] = (short) (bits < 0 ? amplitude : -amplitude);
+                    phase += step;
+                    if (phase >= 128)
+                        phase -= 128;
+                }
+            }
+            position += (long) run * instructionsPerSecond;
+            i += run;
+        }
+    }
+
+    /**
+     * Fill the buffer with samples up to its limit
+     * Samples are written with the byte order of the buffer
+     *
+     * @param buffer Destination
+     * @return Number of samples written
+     */
+    public synchronized int read(ByteBuffer buffer) {
+        int length = buffer.remaining() / 2;
+        if (scratch.length < length)
+            scratch = new short[length];
+        read(scratch, 0, length);
+        ShortBuffer shorts = buffer.asShortBuffer();
+        shorts.put(scratch, 0, length);
+        buffer.position(buffer.position() + length * 2);
+        return length;
+    }
+
+    /**
+     * Get the number of samples emulated but not read yet
+     *
+     * @return Available samples
+     */
+    public synchronized int available() {
+        long pending = (headCycle * sampleRate - position) / instructionsPerSecond;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, pending));
+    }
+
+    /**
+     * Get the sample rate
+     *
+     * @return Samples per second
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Set the square wave frequency, used until a pattern is loaded
+     * Defalt is 440Hz
+     *
+     * @param frequency Frequency (Hz)
+     */
+    public synchronized void setFrequency(double frequency) {
+        if (frequency <= 0)
+            throw new IllegalArgumentException("Frequency must be positive: " + frequency);
+        this.frequency = frequency;
+        updateStep();
+    }
+
+    /**
+     * Set the peak sample value
+     * Defalt is 4096
+     *
+     * @param amplitude Amplitude, 0 to 32767
+     */
+    public synchronized void setAmplitude(int amplitude) {
+        if (amplitude < 0 || amplitude > Short.MAX_VALUE)
+            throw new IllegalArgumentException("Amplitude out of range: " + amplitude);
+        this.amplitude = amplitude;
+    }
+}
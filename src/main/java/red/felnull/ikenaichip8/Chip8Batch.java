@@ -0,0 +1,678 @@
+package red.felnull.ikenaichip8;
+
+import java.util.Arrays;
+
+/**
+ * Many CHIP-8 machines running one ROM in lockstep
+ * The machine state is kept in structure-of-arrays form, register x of lane l is V[x * lanes + l]
+ * Every step fetches the next instruction of each lane, groups the lanes by processor code
+ * and runs each handler once over its group of lanes
+ * A lane behaves like a Chip8 with setSeed(lane seed) driven by runFrame
+ * Lanes share the ROM memory until they first write, then get a private copy that is reused across resets
+ * Lanes that execute an unknown opcode or access memory or the stack out of range are faulted and stop
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Batch {
+    private static final CPU.ProcessorCode[] CODES = CPU.ProcessorCode.values();
+    private static final CPU.ProcessorCode[] TABLE = CPU.ProcessorCode.getTable(Chip8Mode.CHIP8);
+    private final int lanes;
+    private final byte[] rom;
+    private final byte[][] memory;
+    private final byte[][] privateMemory;
+    private final int[] V;
+    private final int[] I;
+    private final int[] stack;
+    private final int[] sp;
+    private final int[] pc;
+    private final int[] delayTimer;
+    private final int[] soundTimer;
+    private final long[] rows;
+    private final int[] keys;
+    private final long[] seeds;
+    private final Chip8Random[] randoms;
+    private final boolean[] faulted;
+    private final int[] opcodes;
+    private final int[] codes;
+    private final int[] order;
+    private final int[] allLanes;
+    private final int[] groupEnd = new int[CODES.length + 1];
+    private int instructionsPerSecond = 500;
+    private long timerCredit;
+    private long cycles;
+
+    /**
+     * @param image Rom image
+     * @param lanes Number of machines
+     */
+    public Chip8Batch(RomImage image, int lanes) {
+        if (lanes <= 0)
+            throw new IllegalArgumentException("Lanes must be positive: " + lanes);
+        this.lanes = lanes;
+        byte[][] pages = image.getPages(Chip8Mode.CHIP8);
+        this.rom = new byte[Memory.SIZE];
+        for (int i = 0; i < pages.length; i++)
+            System.arraycopy(pages[i], 0, rom, i << Memory.PAGE_BITS, Memory.PAGE_SIZE);
+        this.memory = new byte[lanes][];
+        this.privateMemory = new byte[lanes][];
+        this.V = new int[16 * lanes];
+        this.I = new int[lanes];
+        this.stack = new int[16 * lanes];
+        this.sp = new int[lanes];
+        this.pc = new int[lanes];
+        this.delayTimer = new int[lanes];
+        this.soundTimer = new int[lanes];
+        this.rows = new long[Display.HEIGHT * lanes];
+        this.keys = new int[lanes];
+        this.seeds = new long[lanes];
+        this.randoms = new Chip8Random[lanes];
+        this.faulted = new boolean[lanes];
+        this.opcodes = new int[lanes];
+        this.codes = new int[lanes];
+        this.order = new int[lanes];
+        this.allLanes = new int[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            seeds[lane] = lane;
+            allLanes[lane] = lane;
+        }
+        reset();
+    }
+
+    /**
+     * Set the random seed of a lane
+     * Takes effect at the next reset, defalt is the lane number
+     *
+     * @param lane Lane
+     * @param seed Seed
+     */
+    public void setSeed(int lane, long seed) {
+        seeds[lane] = seed;
+    }
+
+    /**
+     * Set the instruction rate used for the 60Hz timers
+     * Defalt is 500
+     *
+     * @param instructionsPerSecond Instructions per second
+     */
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        if (instructionsPerSecond <= 0)
+            throw new IllegalArgumentException("Instructions per second must be positive: " + instructionsPerSecond);
+        this.instructionsPerSecond = instructionsPerSecond;
+    }
+
+    /**
+     * Reset every lane to the initial state of the ROM
+     */
+    public void reset() {
+        Arrays.fill(memory, null);
+        Arrays.fill(V, 0);
+        Arrays.fill(I, 0);
+        Arrays.fill(stack, 0);
+        Arrays.fill(sp, 0);
+        Arrays.fill(pc, 0x200);
+        Arrays.fill(delayTimer, 0);
+        Arrays.fill(soundTimer, 0);
+        Arrays.fill(rows, 0);
+        Arrays.fill(keys, 0);
+        Arrays.fill(faulted, false);
+        for (int lane = 0; lane < lanes; lane++)
+            randoms[lane] = new Chip8Random(seeds[lane]);
+        timerCredit = 0;
+        cycles = 0;
+    }
+
+    /**
+     * Execute instructions until the next 60Hz timer tick on every lane
+     *
+     * @return Number of executed steps
+     */
+    public long runFrame() {
+        return runCycles(cyclesUntilTick());
+    }
+
+    /**
+     * Execute the given number of lockstep steps
+     * The timers follow the 60Hz virtual clock and tick inside the batch,
+     * the result is the same as calling runFrame for the same number of steps
+     *
+     * @param steps Number of steps
+     * @return Number of executed steps
+     */
+    public long runCycles(long steps) {
+        long done = 0;
+        while (done < steps) {
+            long chunk = Math.min(steps - done, cyclesUntilTick());
+            for (long i = 0; i < chunk; i++)
+                step();
+            done += chunk;
+            timerCredit += chunk * 60;
+            while (timerCredit >= instructionsPerSecond) {
+                tickTimers();
+                timerCredit -= instructionsPerSecond;
+            }
+        }
+        return steps;
+    }
+
+    private long cyclesUntilTick() {
+        return Math.max(1, (instructionsPerSecond - timerCredit + 59) / 60);
+    }
+
+    /**
+     * Execute one instruction on every lane that is not faulted
+     * When every lane runs the same opcode the grouping is skipped
+     * The timers are not ticked
+     */
+    public void step() {
+        int[] groupEnd = this.groupEnd;
+        Arrays.fill(groupEnd, 0);
+        boolean uniform = true;
+        for (int lane = 0; lane < lanes; lane++) {
+            int code = CODES.length;
+            if (!faulted[lane]) {
+                int address = pc[lane];
+                if (address >= 0 && address + 1 < Memory.SIZE) {
+                    byte[] bytes = memory(lane);
+                    int opcode = (bytes[address] & 0xFF) << 8 | (bytes[address + 1] & 0xFF);
+                    CPU.ProcessorCode processorCode = TABLE[opcode];
+                    if (processorCode != null && inRange(lane, processorCode, opcode)) {
+                        opcodes[lane] = opcode;
+                        code = processorCode.ordinal();
+                    } else {
+                        faulted[lane] = true;
+                    }
+                } else {
+                    faulted[lane] = true;
+                }
+            }
+            codes[lane] = code;
+            groupEnd[code]++;
+            uniform &= code == codes[0] && opcodes[lane] == opcodes[0];
+        }
+        if (uniform && codes[0] < CODES.length) {
+            execute(CODES[codes[0]], allLanes, 0, lanes);
+            cycles++;
+            return;
+        }
+        int start = 0;
+        for (int code = 0; code < groupEnd.length; code++) {
+            int count = groupEnd[code];
+            groupEnd[code] = start;
+            start += count;
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            int code = codes[lane];
+            if (code < CODES.length)
+                order[groupEnd[code]++] = lane;
+        }
+        int from = 0;
+        for (int code = 0; code < CODES.length; code++) {
+            int to = groupEnd[code];
+            if (from < to)
+                execute(CODES[code], order, from, to);
+            from = to;
+        }
+        cycles++;
+    }
+
+    private void execute(CPU.ProcessorCode code, int[] order, int from, int to) {
+        int[] V = this.V;
+        int[] pc = this.pc;
+        int lanes = this.lanes;
+        switch (code) {
+            case _00E0:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    Arrays.fill(rows, lane * Display.HEIGHT, (lane + 1) * Display.HEIGHT, 0);
+                    pc[lane] += 2;
+                }
+                break;
+            case _00EE:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    sp[lane]--;
+                    pc[lane] = stack[sp[lane] * lanes + lane] + 2;
+                }
+                break;
+            case _1NNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    pc[lane] = opcodes[lane] & 0x0FFF;
+                }
+                break;
+            case _2NNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    stack[sp[lane] * lanes + lane] = pc[lane];
+                    sp[lane]++;
+                    pc[lane] = opcodes[lane] & 0x0FFF;
+                }
+                break;
+            case _3XNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    pc[lane] += V[(opcode >> 8 & 0xF) * lanes + lane] == (opcode & 0xFF) ? 4 : 2;
+                }
+                break;
+            case _4XNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    pc[lane] += V[(opcode >> 8 & 0xF) * lanes + lane] != (opcode & 0xFF) ? 4 : 2;
+                }
+                break;
+            case _5XY0:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    pc[lane] += V[(opcode >> 8 & 0xF) * lanes + lane] == V[(opcode >> 4 & 0xF) * lanes + lane] ? 4 : 2;
+                }
+                break;
+            case _6XNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] = opcode & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _7XNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    int x = (opcode >> 8 & 0xF) * lanes + lane;
+                    V[x] = (V[x] + opcode) & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY0:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] = V[(opcode >> 4 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY1:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] |= V[(opcode >> 4 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY2:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] &= V[(opcode >> 4 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY3:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] ^= V[(opcode >> 4 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY4:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    int x = (opcode >> 8 & 0xF) * lanes + lane;
+                    int y = (opcode >> 4 & 0xF) * lanes + lane;
+                    V[15 * lanes + lane] = V[y] > 0xFF - V[x] ? 1 : 0;
+                    V[x] = (V[x] + V[y]) & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY5:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    int x = (opcode >> 8 & 0xF) * lanes + lane;
+                    int y = (opcode >> 4 & 0xF) * lanes + lane;
+                    V[15 * lanes + lane] = V[y] > V[x] ? 0 : 1;
+                    V[x] = (V[x] - V[y]) & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY6:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int x = (opcodes[lane] >> 8 & 0xF) * lanes + lane;
+                    V[15 * lanes + lane] = V[x] & 0x1;
+                    V[x] = V[x] >> 1;
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XY7:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    int x = (opcode >> 8 & 0xF) * lanes + lane;
+                    int y = (opcode >> 4 & 0xF) * lanes + lane;
+                    V[15 * lanes + lane] = V[x] > V[y] ? 0 : 1;
+                    V[x] = (V[y] - V[x]) & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _8XYE:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int x = (opcodes[lane] >> 8 & 0xF) * lanes + lane;
+                    V[15 * lanes + lane] = V[x] >> 7;
+                    V[x] = (V[x] << 1) & 0xFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _9XY0:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    pc[lane] += V[(opcode >> 8 & 0xF) * lanes + lane] != V[(opcode >> 4 & 0xF) * lanes + lane] ? 4 : 2;
+                }
+                break;
+            case _ANNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    I[lane] = opcodes[lane] & 0x0FFF;
+                    pc[lane] += 2;
+                }
+                break;
+            case _BNNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    pc[lane] = (opcodes[lane] & 0x0FFF) + V[lane];
+                }
+                break;
+            case _CXNN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    V[(opcode >> 8 & 0xF) * lanes + lane] = (randoms[lane].nextInt(32767) % 0xFF) & (opcode & 0xFF);
+                    pc[lane] += 2;
+                }
+                break;
+            case _DXYN:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int opcode = opcodes[lane];
+                    boolean collision = draw(lane, V[(opcode >> 8 & 0xF) * lanes + lane], V[(opcode >> 4 & 0xF) * lanes + lane], opcode & 0xF);
+                    V[15 * lanes + lane] = collision ? 1 : 0;
+                    pc[lane] += 2;
+                }
+                break;
+            case _EX9E:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    pc[lane] += (keys[lane] & (1 << V[(opcodes[lane] >> 8 & 0xF) * lanes + lane])) != 0 ? 4 : 2;
+                }
+                break;
+            case _EXA1:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    pc[lane] += (keys[lane] & (1 << V[(opcodes[lane] >> 8 & 0xF) * lanes + lane])) == 0 ? 4 : 2;
+                }
+                break;
+            case _FX07:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    V[(opcodes[lane] >> 8 & 0xF) * lanes + lane] = delayTimer[lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX0A:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    if (keys[lane] != 0) {
+                        V[(opcodes[lane] >> 8 & 0xF) * lanes + lane] = 31 - Integer.numberOfLeadingZeros(keys[lane]);
+                        pc[lane] += 2;
+                    }
+                }
+                break;
+            case _FX15:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    delayTimer[lane] = V[(opcodes[lane] >> 8 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX18:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    soundTimer[lane] = V[(opcodes[lane] >> 8 & 0xF) * lanes + lane];
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX1E:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int value = V[(opcodes[lane] >> 8 & 0xF) * lanes + lane];
+                    V[15 * lanes + lane] = I[lane] + value > 0xFFF ? 1 : 0;
+                    I[lane] += value;
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX29:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    I[lane] = V[(opcodes[lane] >> 8 & 0xF) * lanes + lane] * 0x5;
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX33:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int value = V[(opcodes[lane] >> 8 & 0xF) * lanes + lane];
+                    byte[] bytes = writableMemory(lane);
+                    bytes[I[lane]] = (byte) (value / 100);
+                    bytes[I[lane] + 1] = (byte) ((value / 10) % 10);
+                    bytes[I[lane] + 2] = (byte) (value % 10);
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX55:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int count = (opcodes[lane] >> 8 & 0xF) + 1;
+                    byte[] bytes = writableMemory(lane);
+                    for (int i = 0; i < count; i++)
+                        bytes[I[lane] + i] = (byte) V[i * lanes + lane];
+                    I[lane] += count;
+                    pc[lane] += 2;
+                }
+                break;
+            case _FX65:
+                for (int k = from; k < to; k++) {
+                    int lane = order[k];
+                    int count = (opcodes[lane] >> 8 & 0xF) + 1;
+                    byte[] bytes = memory(lane);
+                    for (int i = 0; i < count; i++)
+                        V[i * lanes + lane] = bytes[I[lane] + i] & 0xFF;
+                    I[lane] += count;
+                    pc[lane] += 2;
+                }
+                break;
+            default:
+                for (int k = from; k < to; k++)
+                    faulted[order[k]] = true;
+                break;
+        }
+    }
+
+    /**
+     * Check the memory and stack accesses of the instruction before any lane runs it
+     */
+    private boolean inRange(int lane, CPU.ProcessorCode code, int opcode) {
+        switch (code) {
+            case _00EE:
+                return sp[lane] > 0;
+            case _2NNN:
+                return sp[lane] < 16;
+            case _DXYN:
+                return I[lane] >= 0 && I[lane] + Math.min(opcode & 0xF, Display.HEIGHT - (V[(opcode >> 4 & 0xF) * lanes + lane] & (Display.HEIGHT - 1))) <= Memory.SIZE;
+            case _FX33:
+                return I[lane] >= 0 && I[lane] + 3 <= Memory.SIZE;
+            case _FX55:
+            case _FX65:
+                return I[lane] >= 0 && I[lane] + (opcode >> 8 & 0xF) + 1 <= Memory.SIZE;
+            default:
+                return true;
+        }
+    }
+
+    private boolean draw(int lane, int x, int y, int height) {
+        x &= Display.WIDTH - 1;
+        y &= Display.HEIGHT - 1;
+        int lines = Math.min(height, Display.HEIGHT - y);
+        byte[] bytes = memory(lane);
+        int base = lane * Display.HEIGHT + y;
+        int address = I[lane];
+        long collision = 0;
+        for (int i = 0; i < lines; i++) {
+            long line = ((long) (bytes[address + i] & 0xFF) << 56) >>> x;
+            collision |= rows[base + i] & line;
+            rows[base + i] ^= line;
+        }
+        return collision != 0;
+    }
+
+    private void tickTimers() {
+        for (int lane = 0; lane < lanes; lane++) {
+            if (delayTimer[lane] > 0)
+                delayTimer[lane]--;
+            if (soundTimer[lane] > 0)
+                soundTimer[lane]--;
+        }
+    }
+
+    private byte[] memory(int lane) {
+        byte[] bytes = memory[lane];
+        return bytes == null ? rom : bytes;
+    }
+
+    private byte[] writableMemory(int lane) {
+        byte[] bytes = memory[lane];
+        if (bytes == null) {
+            bytes = privateMemory[lane];
+            if (bytes == null) {
+                bytes = new byte[Memory.SIZE];
+                privateMemory[lane] = bytes;
+            }
+            System.arraycopy(rom, 0, bytes, 0, Memory.SIZE);
+            memory[lane] = bytes;
+        }
+        return bytes;
+    }
+
+    /**
+     * Press the key on a lane
+     *
+     * @param lane   Lane
+     * @param keyNum Key number
+     */
+    public void pressKey(int lane, int keyNum) {
+        keys[lane] |= 1 << (keyNum & 0xF);
+    }
+
+    /**
+     * Release the key on a lane
+     *
+     * @param lane   Lane
+     * @param keyNum Key number
+     */
+    public void releaseKey(int lane, int keyNum) {
+        keys[lane] &= ~(1 << (keyNum & 0xF));
+    }
+
+    /**
+     * Get if drawn on a lane
+     * (64*32)
+     *
+     * @param lane Lane
+     * @param x    Xpos
+     * @param y    Ypos
+     * @return drawn
+     */
+    public boolean getGraphic(int lane, int x, int y) {
+        return (rows[lane * Display.HEIGHT + y] << x) < 0;
+    }
+
+    /**
+     * Copy the frame of a lane, same layout as Chip8.getFrame(long[])
+     *
+     * @param lane Lane
+     * @param rows Destination, at least 32 long
+     */
+    public void getFrame(int lane, long[] rows) {
+        System.arraycopy(this.rows, lane * Display.HEIGHT, rows, 0, Display.HEIGHT);
+    }
+
+    /**
+     * Get a V register of a lane
+     *
+     * @param lane     Lane
+     * @param register Register number
+     * @return Value
+     */
+    public int getRegister(int lane, int register) {
+        return V[register * lanes + lane];
+    }
+
+    /**
+     * Get the program counter of a lane
+     *
+     * @param lane Lane
+     * @return Address
+     */
+    public int getPc(int lane) {
+        return pc[lane];
+    }
+
+    /**
+     * Whether the lane has stopped on an invalid instruction or access
+     *
+     * @param lane Lane
+     * @return Is faulted
+     */
+    public boolean isFaulted(int lane) {
+        return faulted[lane];
+    }
+
+    /**
+     * Whether the lane jumps to itself (1NNN)
+     *
+     * @param lane Lane
+     * @return Is halted
+     */
+    public boolean isHalted(int lane) {
+        int address = pc[lane];
+        if (address < 0 || address + 1 >= Memory.SIZE)
+            return false;
+        byte[] bytes = memory(lane);
+        return ((bytes[address] & 0xFF) << 8 | (bytes[address + 1] & 0xFF)) == (0x1000 | address);
+    }
+
+    /**
+     * Get the number of lanes
+     *
+     * @return Lane count
+     */
+    public int getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Get the number of executed steps since the reset
+     *
+     * @return Step count
+     */
+    public long getCycles() {
+        return cycles;
+    }
+}
@@ -0,0 +1,58 @@
+package red.felnull.ikenaichip8;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * BufferedImage output of the emulator display
+ * Kept out of Chip8 so the emulator core does not depend on java.desktop
+ *
+ * @author MORIMORI0317
+ */
+public final class Chip8Images {
+    private Chip8Images() {
+    }
+
+    /**
+     * Draw the last published frame directly into the pixels of a BufferedImage
+     * The image must be TYPE_INT_RGB, TYPE_INT_ARGB or TYPE_INT_ARGB_PRE
+     * Colors are in the image format, for example 0xFF000000 is opaque black for TYPE_INT_ARGB
+     * The frame is not clipped, an image smaller than the scaled frame throws IllegalArgumentException
+     * A 128*64 image at scale 1 fits every mode, the published resolution can change at any time
+     *
+     * @param chip8    Emulator
+     * @param image    Destination
+     * @param scale    Scale factor
+     * @param offColor Color of not drawn pixels
+     * @param onColor  Color of drawn pixels
+     */
+    public static void getFrame(Chip8 chip8, BufferedImage image, int scale, int offColor, int onColor) {
+        getFrame(chip8, image, scale, offColor, onColor, null);
+    }
+
+    /**
+     * Draw the last published frame into a BufferedImage and get its format
+     * Same as getFrame without info, the format is read together with the pixels
+     *
+     * @param chip8    Emulator
+     * @param image    Destination
+     * @param scale    Scale factor
+     * @param offColor Color of not drawn pixels
+     * @param onColor  Color of drawn pixels
+     * @param info     Receives the width, height and plane count of the drawn frame, or null
+     */
+    public static void getFrame(Chip8 chip8, BufferedImage image, int scale, int offColor, int onColor, FrameInfo info) {
+        WritableRaster raster = image.getRaster();
+        if (!(raster.getDataBuffer() instanceof DataBufferInt) || !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel))
+            throw new IllegalArgumentException("Image is not int packed: " + image.getType());
+        DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+        SinglePixelPackedSampleModel model = (SinglePixelPackedSampleModel) raster.getSampleModel();
+        int stride = model.getScanlineStride();
+        int offset = buffer.getOffset() - raster.getSampleModelTranslateY() * stride - raster.getSampleModelTranslateX();
+        int format = chip8.display.copyPublished(buffer.getData(), offset, stride, image.getWidth(), image.getHeight(), scale, offColor, onColor, onColor, onColor);
+        if (info != null)
+            info.set(format);
+    }
+}
@@ -0,0 +1,210 @@
+package red.felnull.ikenaichip8;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Execution metrics of one emulator
+ * Counters are written by the emulator thread and can be read from any thread
+ * Start the JVM with -Dikenaichip8.metrics=false to compile all counting out of the hot path
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Metrics {
+    protected static final boolean ENABLED = !"false".equals(System.getProperty("ikenaichip8.metrics"));
+    /**
+     * Number of frame time histogram buckets, bucket i counts frames of 2^i to 2^(i+1) microseconds
+     */
+    public static final int FRAME_TIME_BUCKETS = 24;
+    private final AtomicLongArray opcodeCounts = new AtomicLongArray(CPU.ProcessorCode.values().length);
+    private final LongAdder listenerNanos = new LongAdder();
+    private final LongAdder listenerCalls = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder sleeps = new LongAdder();
+    private final LongAdder sleepOvershootNanos = new LongAdder();
+    private final LongAdder[] frameTimes = new LongAdder[FRAME_TIME_BUCKETS];
+    private final long startTime = System.nanoTime();
+    private volatile double requestedRate;
+
+    protected Chip8Metrics() {
+        for (int i = 0; i < frameTimes.length; i++)
+            frameTimes[i] = new LongAdder();
+    }
+
+    protected void count(CPU.ProcessorCode code) {
+        int index = code.ordinal();
+        opcodeCounts.lazySet(index, opcodeCounts.get(index) + 1);
+    }
+
+    protected void listeners(long nanos) {
+        listenerNanos.add(nanos);
+        listenerCalls.increment();
+    }
+
+    protected void frame() {
+        frames.increment();
+    }
+
+    protected void frameTime(long nanos) {
+        long micros = Math.max(1, nanos / 1000);
+        int bucket = Math.min(FRAME_TIME_BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+        frameTimes[bucket].increment();
+    }
+
+    protected void sleep(long requestedNanos, long actualNanos) {
+        sleeps.increment();
+        sleepOvershootNanos.add(Math.max(0, actualNanos - requestedNanos));
+    }
+
+    protected void setRequestedRate(double requestedRate) {
+        this.requestedRate = requestedRate;
+    }
+
+    /**
+     * Get the execution count of each processor code
+     *
+     * @return Processor code name to count
+     */
+    public Map<String, Long> getOpcodeCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (CPU.ProcessorCode code : CPU.ProcessorCode.values())
+            counts.put(code.name().substring(1), opcodeCounts.get(code.ordinal()));
+        return counts;
+    }
+
+    /**
+     * Get the number of executed instructions
+     *
+     * @return Instruction count
+     */
+    public long getInstructions() {
+        long total = 0;
+        for (int i = 0; i < opcodeCounts.length(); i++)
+            total += opcodeCounts.get(i);
+        return total;
+    }
+
+    /**
+     * Get the average instruction rate since the metrics were enabled
+     * Use newSampler for the rate over the last interval
+     *
+     * @return Instructions per second
+     */
+    public double getInstructionsPerSecond() {
+        return getInstructions() * 1e9 / Math.max(1, System.nanoTime() - startTime);
+    }
+
+    /**
+     * Create a sampler of the instruction rate for one reader
+     *
+     * @return Sampler, starting now
+     */
+    public Sampler newSampler() {
+        return new Sampler();
+    }
+
+    /**
+     * Get the instruction rate requested by the running loop or scheduler
+     * 0 when unthrottled or not started by run
+     *
+     * @return Instructions per second
+     */
+    public double getRequestedInstructionsPerSecond() {
+        return requestedRate;
+    }
+
+    /**
+     * Get the time spent in listeners
+     *
+     * @return Nanoseconds
+     */
+    public long getListenerNanos() {
+        return listenerNanos.sum();
+    }
+
+    /**
+     * Get the number of listener dispatches
+     *
+     * @return Dispatch count
+     */
+    public long getListenerCalls() {
+        return listenerCalls.sum();
+    }
+
+    /**
+     * Get the number of sprite draws (DXYN)
+     *
+     * @return Draw count
+     */
+    public long getDraws() {
+        return opcodeCounts.get(CPU.ProcessorCode._DXYN.ordinal()) + opcodeCounts.get(CPU.ProcessorCode._DXYN_WRAP.ordinal());
+    }
+
+    /**
+     * Get the number of frames published to the GFX listeners
+     *
+     * @return Frame count
+     */
+    public long getFrames() {
+        return frames.sum();
+    }
+
+    /**
+     * Get the histogram of the time to emulate and dispatch one turbo or scheduler frame
+     * Bucket i counts frames of 2^i to 2^(i+1) microseconds, the last bucket also counts longer frames
+     *
+     * @return Frame counts, FRAME_TIME_BUCKETS long
+     */
+    public long[] getFrameTimeHistogram() {
+        long[] histogram = new long[FRAME_TIME_BUCKETS];
+        for (int i = 0; i < histogram.length; i++)
+            histogram[i] = frameTimes[i].sum();
+        return histogram;
+    }
+
+    /**
+     * Get the number of sleeps of the run loop
+     *
+     * @return Sleep count
+     */
+    public long getSleeps() {
+        return sleeps.sum();
+    }
+
+    /**
+     * Get the total time the run loop slept longer than requested
+     *
+     * @return Nanoseconds
+     */
+    public long getSleepOvershootNanos() {
+        return sleepOvershootNanos.sum();
+    }
+
+    /**
+     * Instruction rate sampler of one reader
+     * Not shared between threads, create one per reader with newSampler
+     */
+    public class Sampler {
+        private long sampleTime = System.nanoTime();
+        private long sampleInstructions = getInstructions();
+
+        private Sampler() {
+        }
+
+        /**
+         * Get the instruction rate since the previous call or the creation of this sampler
+         *
+         * @return Instructions per second
+         */
+        public double getInstructionsPerSecond() {
+            long now = System.nanoTime();
+            long instructions = getInstructions();
+            double rate = (instructions - sampleInstructions) * 1e9 / Math.max(1, now - sampleTime);
+            sampleTime = now;
+            sampleInstructions = instructions;
+            return rate;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package red.felnull.ikenaichip8;
+
+/**
+ * Instruction set and machine layout of the emulator
+ *
+ * @author MORIMORI0317
+ */
+public enum Chip8Mode {
+    /**
+     * Original CHIP-8, 4KB memory and a 64*32 display
+     */
+    CHIP8(0x1000, 1),
+    /**
+     * SUPER-CHIP 1.1, adds the 128*64 hi-res display, scrolling, 16*16 sprites, the big font and flag registers
+     */
+    SCHIP(0x1000, 1),
+    /**
+     * XO-CHIP, SUPER-CHIP with 64KB memory, two bit planes and an audio pattern buffer
+     */
+    XOCHIP(0x10000, 2);
+
+    private final int memorySize;
+    private final int planes;
+
+    Chip8Mode(int memorySize, int planes) {
+        this.memorySize = memorySize;
+        this.planes = planes;
+    }
+
+    /**
+     * Get the memory size in bytes
+     *
+     * @return Memory size
+     */
+    public int getMemorySize() {
+        return memorySize;
+    }
+
+    /**
+     * Get the number of display bit planes
+     *
+     * @return Plane count
+     */
+    public int getPlanes() {
+        return planes;
+    }
+}
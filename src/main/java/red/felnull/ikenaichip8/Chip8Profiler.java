@@ -0,0 +1,130 @@
+package red.felnull.ikenaichip8;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+/**
+ * Hot spot profiler
+ * Counts executions per program counter address and samples the subroutine call stack
+ * Samples are exported in the collapsed stack format read by flame graph tools
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Profiler {
+    private static final int MAX_DEPTH = 16;
+    private final int sampleInterval;
+    private final long[] counts = new long[Chip8Mode.XOCHIP.getMemorySize()];
+    private final Node root = new Node(0x200);
+    private final Node[] stack = new Node[MAX_DEPTH + 1];
+    private int depth;
+    private int untilSample;
+
+    /**
+     * @param sampleInterval Instructions between call stack samples
+     */
+    public Chip8Profiler(int sampleInterval) {
+        if (sampleInterval <= 0)
+            throw new IllegalArgumentException("Sample interval must be positive: " + sampleInterval);
+        this.sampleInterval = sampleInterval;
+        this.untilSample = sampleInterval;
+        this.stack[0] = root;
+    }
+
+    protected void execute(int pc, CPU.ProcessorCode code, int opcode) {
+        counts[pc]++;
+        if (--untilSample == 0) {
+            untilSample = sampleInterval;
+            stack[depth].child(pc).samples++;
+        }
+        if (code == CPU.ProcessorCode._2NNN) {
+            if (depth < MAX_DEPTH) {
+                stack[depth + 1] = stack[depth].child(opcode & 0x0FFF);
+                depth++;
+            }
+        } else if (code == CPU.ProcessorCode._00EE) {
+            if (depth > 0)
+                depth--;
+        }
+    }
+
+    protected void reset() {
+        depth = 0;
+    }
+
+    /**
+     * Get the number of executions of the instruction at the address
+     *
+     * @param address Memory address
+     * @return Execution count
+     */
+    public long getCount(int address) {
+        return counts[address];
+    }
+
+    /**
+     * Copy the execution count of every address
+     * Addresses past the destination length are not copied
+     *
+     * @param destination Destination, 4096 long covers CHIP8 and SCHIP, 65536 long covers XO-CHIP
+     */
+    public void getCounts(long[] destination) {
+        System.arraycopy(counts, 0, destination, 0, Math.min(counts.length, destination.length));
+    }
+
+    /**
+     * Write the call stack samples in the collapsed stack format
+     * One line per stack, subroutine addresses separated by ';' and the sampled address last
+     *
+     * @param out Destination
+     */
+    public void writeCollapsed(Appendable out) {
+        try {
+            write(out, root, new StringBuilder("0x200"));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Forget all counts and samples
+     */
+    public void clear() {
+        Arrays.fill(counts, 0);
+        root.children = new Node[0];
+        root.samples = 0;
+        depth = 0;
+    }
+
+    private static void write(Appendable out, Node node, StringBuilder path) throws IOException {
+        int length = path.length();
+        for (Node child : node.children) {
+            path.append(';').append(String.format("0x%03x", child.address));
+            if (child.samples > 0)
+                out.append(path).append(' ').append(Long.toString(child.samples)).append('\n');
+            write(out, child, path);
+            path.setLength(length);
+        }
+    }
+
+    private static class Node {
+        private final int address;
+        private long samples;
+        private Node[] children = new Node[0];
+
+        private Node(int address) {
+            this.address = address;
+        }
+
+        private Node child(int address) {
+            for (Node child : children) {
+                if (child.address == address)
+                    return child;
+            }
+            Node child = new Node(address);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+    }
+}
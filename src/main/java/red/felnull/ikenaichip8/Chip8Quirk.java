@@ -0,0 +1,85 @@
+package red.felnull.ikenaichip8;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Behaviors that differ between CHIP-8 interpreters
+ * A quirk set is resolved into the decode table once at initialize, it costs nothing per instruction
+ *
+ * @author MORIMORI0317
+ */
+public enum Chip8Quirk {
+    /**
+     * 8XY6 and 8XYE shift VX in place and ignore VY, otherwise VX is set to VY shifted
+     */
+    SHIFT_VX,
+    /**
+     * FX55 and FX65 leave I at I + X + 1, otherwise I is unchanged
+     */
+    LOAD_STORE_INCREMENT,
+    /**
+     * BXNN jumps to XNN + VX, otherwise BNNN jumps to NNN + V0
+     */
+    JUMP_VX,
+    /**
+     * FX1E sets VF when I passes 0xFFF, otherwise VF is unchanged
+     */
+    ADD_I_OVERFLOW,
+    /**
+     * DXYN wraps sprites around the screen edges, otherwise they are clipped
+     */
+    WRAP_SPRITES;
+
+    /**
+     * Get the quirks of the original behavior of this library
+     *
+     * @return SHIFT_VX, LOAD_STORE_INCREMENT and ADD_I_OVERFLOW
+     */
+    public static EnumSet<Chip8Quirk> defaults() {
+        return EnumSet.of(SHIFT_VX, LOAD_STORE_INCREMENT, ADD_I_OVERFLOW);
+    }
+
+    /**
+     * Get the quirks of the COSMAC VIP interpreter
+     *
+     * @return LOAD_STORE_INCREMENT
+     */
+    public static EnumSet<Chip8Quirk> cosmac() {
+        return EnumSet.of(LOAD_STORE_INCREMENT);
+    }
+
+    /**
+     * Get the quirks of the SUPER-CHIP 1.1 interpreter
+     *
+     * @return SHIFT_VX and JUMP_VX
+     */
+    public static EnumSet<Chip8Quirk> superChip() {
+        return EnumSet.of(SHIFT_VX, JUMP_VX);
+    }
+
+    /**
+     * Get the quirks of the XO-CHIP interpreter Octo
+     *
+     * @return LOAD_STORE_INCREMENT and WRAP_SPRITES
+     */
+    public static EnumSet<Chip8Quirk> xoChip() {
+        return EnumSet.of(LOAD_STORE_INCREMENT, WRAP_SPRITES);
+    }
+
+    protected static int toMask(Set<Chip8Quirk> quirks) {
+        int mask = 0;
+        for (Chip8Quirk quirk : quirks)
+            mask |= 1 << quirk.ordinal();
+        return mask;
+    }
+
+    protected static EnumSet<Chip8Quirk> fromMask(int mask) {
+        EnumSet<Chip8Quirk> quirks = EnumSet.noneOf(Chip8Quirk.class);
+        for (Chip8Quirk quirk : values()) {
+            if ((mask & (1 << quirk.ordinal())) != 0)
+                quirks.add(quirk);
+        }
+        return quirks;
+    }
+}
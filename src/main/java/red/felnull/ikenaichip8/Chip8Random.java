@@ -0,0 +1,68 @@
+package red.felnull.ikenaichip8;
+
+import java.util.Random;
+
+/**
+ * Seeded random number source whose state can be saved
+ * Produces the same numbers as java.util.Random with the same seed, so existing input logs replay the same
+ * The state is written into snapshots, see Chip8.snapshot
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Random implements Chip8.C8Random {
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    private long state;
+
+    /**
+     * Random source with a random seed
+     */
+    public Chip8Random() {
+        this(new Random().nextLong());
+    }
+
+    /**
+     * @param seed Random seed
+     */
+    public Chip8Random(long seed) {
+        setSeed(seed);
+    }
+
+    /**
+     * Seed again, the same as creating it with the seed
+     *
+     * @param seed Random seed
+     */
+    public void setSeed(long seed) {
+        this.state = (seed ^ MULTIPLIER) & MASK;
+    }
+
+    @Override
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("Bound must be positive: " + bound);
+        if ((bound & -bound) == bound)
+            return (int) ((bound * (long) next(31)) >> 31);
+        int bits;
+        int value;
+        do {
+            bits = next(31);
+            value = bits % bound;
+        } while (bits - value + (bound - 1) < 0);
+        return value;
+    }
+
+    private int next(int bits) {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int) (state >>> (48 - bits));
+    }
+
+    protected long getState() {
+        return state;
+    }
+
+    protected void setState(long state) {
+        this.state = state & MASK;
+    }
+}
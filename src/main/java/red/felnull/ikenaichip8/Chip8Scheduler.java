@@ -0,0 +1,137 @@
+package red.felnull.ikenaichip8;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many emulators on a shared worker pool
+ * Each emulator runs one turbo mode frame every 1/60 second
+ * Pause and unpause stop and restart its frames, stop removes it
+ * Emulators waiting for a key or halted are parked until a key, reset or unpause wakes them
+ *
+ * @author MORIMORI0317
+ */
+public class Chip8Scheduler implements AutoCloseable {
+    private static final long FRAME_NANOS = 1000000000L / 60;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Map<Chip8, Slice> slices = new ConcurrentHashMap<>();
+
+    /**
+     * Worker pool with one thread per processor
+     */
+    public Chip8Scheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Worker pool with the given number of threads
+     *
+     * @param threads Number of worker threads
+     */
+    public Chip8Scheduler(int threads) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r);
+            thread.setName("Chip8 Scheduler-" + count.incrementAndGet());
+            return thread;
+        });
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Start running the emulator on this scheduler
+     *
+     * @param chip8 Emulator
+     */
+    public void add(Chip8 chip8) {
+        chip8.attach(this);
+        Slice slice = new Slice(chip8);
+        slices.put(chip8, slice);
+        if (!chip8.isPause())
+            slice.schedule();
+    }
+
+    /**
+     * Stop running the emulator on this scheduler
+     *
+     * @param chip8 Emulator
+     */
+    public void remove(Chip8 chip8) {
+        Slice slice = slices.remove(chip8);
+        if (slice != null) {
+            slice.cancel();
+            chip8.detach(this);
+        }
+    }
+
+    /**
+     * Number of emulators on this scheduler
+     *
+     * @return Emulator count
+     */
+    public int size() {
+        return slices.size();
+    }
+
+    protected void update(Chip8 chip8) {
+        Slice slice = slices.get(chip8);
+        if (slice == null)
+            return;
+        if (chip8.isPause() || chip8.isParked())
+            slice.cancel();
+        else
+            slice.schedule();
+    }
+
+    /**
+     * Stop all emulators and the worker threads
+     */
+    @Override
+    public void close() {
+        for (Chip8 chip8 : new ArrayList<>(slices.keySet()))
+            remove(chip8);
+        executor.shutdown();
+    }
+
+    private class Slice implements Runnable {
+        private final Chip8 chip8;
+        private ScheduledFuture<?> future;
+
+        private Slice(Chip8 chip8) {
+            this.chip8 = chip8;
+        }
+
+        private synchronized void schedule() {
+            if (future == null && !executor.isShutdown())
+                future = executor.scheduleAtFixedRate(this, ThreadLocalRandom.current().nextLong(FRAME_NANOS), FRAME_NANOS, TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void cancel() {
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        @Override
+        public synchronized void run() {
+            if (future == null)
+                return;
+            try {
+                chip8.runSlice();
+                if (chip8.tryPark())
+                    cancel();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                remove(chip8);
+            }
+        }
+    }
+}
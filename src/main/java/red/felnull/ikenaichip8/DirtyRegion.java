@@ -0,0 +1,87 @@
+package red.felnull.ikenaichip8;
+
+/**
+ * Region of the display changed since the last notification
+ * The instance is reused, copy the values if they are needed later
+ *
+ * @author MORIMORI0317
+ */
+public class DirtyRegion {
+    private long rows;
+    private int minX;
+    private int maxX;
+
+    protected DirtyRegion() {
+    }
+
+    protected void set(long rows, int minX, int maxX) {
+        this.rows = rows;
+        this.minX = minX;
+        this.maxX = maxX;
+    }
+
+    /**
+     * Get the changed rows
+     * Bit y is set when row y changed
+     *
+     * @return Dirty row mask
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Whether the row changed
+     *
+     * @param y Ypos
+     * @return Is dirty
+     */
+    public boolean isRowDirty(int y) {
+        return (rows & (1L << y)) != 0;
+    }
+
+    /**
+     * Whether nothing changed
+     *
+     * @return Is empty
+     */
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    /**
+     * Get the left edge of the bounding rectangle
+     *
+     * @return Xpos
+     */
+    public int getX() {
+        return isEmpty() ? 0 : minX;
+    }
+
+    /**
+     * Get the top edge of the bounding rectangle
+     *
+     * @return Ypos
+     */
+    public int getY() {
+        return Long.numberOfTrailingZeros(rows) & 63;
+    }
+
+    /**
+     * Get the width of the bounding rectangle
+     *
+     * @return Width
+     */
+    public int getWidth() {
+        return isEmpty() ? 0 : maxX - minX + 1;
+    }
+
+    /**
+     * Get the height of the bounding rectangle
+     *
+     * @return Height
+     */
+    public int getHeight() {
+        return isEmpty() ? 0 : 64 - Long.numberOfLeadingZeros(rows) - getY();
+    }
+}
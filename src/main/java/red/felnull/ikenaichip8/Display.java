@@ -0,0 +1,498 @@
+package red.felnull.ikenaichip8;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Bit-packed framebuffer
+ * Each row is one long per 64 pixels, the most significant bit of the first long is x = 0
+ * Bit planes are stored one after another, each plane is height rows
+ * The emulator thread draws into the working rows and publishes finished frames to a triple buffer,
+ * other threads only read published frames
+ *
+ * @author MORIMORI0317
+ */
+public class Display {
+    protected static final int WIDTH = 64;
+    protected static final int HEIGHT = 32;
+    protected static final int HIRES_WIDTH = 128;
+    protected static final int HIRES_HEIGHT = 64;
+    protected static final int MAX_PLANES = 2;
+    protected static final int MAX_WORDS = MAX_PLANES * HIRES_HEIGHT * HIRES_WIDTH / 64;
+    private static final int BUFFERS = 3;
+    private final Chip8 chip8;
+    protected final long[] rows = new long[MAX_WORDS];
+    private int width = WIDTH;
+    private int height = HEIGHT;
+    private int words = 1;
+    private int planes = 1;
+    private int planeMask = 1;
+    private boolean extended;
+    private long dirtyRows;
+    private int dirtyMinX = HIRES_WIDTH;
+    private int dirtyMaxX = -1;
+    private final long[][] frames = new long[BUFFERS][MAX_WORDS];
+    private final int[] formats = new int[BUFFERS];
+    private volatile long published;
+    private boolean unpublished;
+
+    protected Display(Chip8 chip8) {
+        this.chip8 = chip8;
+        Arrays.fill(formats, format());
+    }
+
+    /**
+     * Set up the display for the mode, lo-res with only the first plane selected
+     *
+     * @param mode Mode
+     */
+    protected void init(Chip8Mode mode) {
+        this.extended = mode != Chip8Mode.CHIP8;
+        this.planes = mode.getPlanes();
+        this.planeMask = 1;
+        setHires(false);
+    }
+
+    /**
+     * Switch between 64*32 and 128*64, the whole display is cleared
+     *
+     * @param hires Whether hi-res
+     */
+    protected void setHires(boolean hires) {
+        width = hires ? HIRES_WIDTH : WIDTH;
+        height = hires ? HIRES_HEIGHT : HEIGHT;
+        words = width >> 6;
+        Arrays.fill(rows, 0);
+        markDirty(0, height, 0, width - 1);
+    }
+
+    /**
+     * Select the planes drawn, cleared and scrolled by the following instructions
+     *
+     * @param mask Plane bits
+     */
+    protected void setPlanes(int mask) {
+        planeMask = mask & ((1 << planes) - 1);
+    }
+
+    protected void clear() {
+        int planeSize = height * words;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) != 0)
+                Arrays.fill(rows, plane * planeSize, (plane + 1) * planeSize, 0);
+        }
+        markDirty(0, height, 0, width - 1);
+    }
+
+    protected boolean get(int x, int y) {
+        return (rows[y * words + (x >> 6)] << x) < 0;
+    }
+
+    protected boolean getPublished(int x, int y) {
+        int index = (int) (published % BUFFERS);
+        int format = formats[index];
+        int words = (format & 0xFF) >> 6;
+        int planeSize = (format >> 8 & 0xFF) * words;
+        long[] frame = frames[index];
+        int word = y * words + (x >> 6);
+        for (int plane = 0; plane < format >>> 16; plane++) {
+            if ((frame[plane * planeSize + word] << x) < 0)
+                return true;
+        }
+        return false;
+    }
+
+    protected int getPublishedWidth() {
+        return formats[(int) (published % BUFFERS)] & 0xFF;
+    }
+
+    protected int getPublishedHeight() {
+        return formats[(int) (published % BUFFERS)] >> 8 & 0xFF;
+    }
+
+    protected int getPublishedPlanes() {
+        return formats[(int) (published % BUFFERS)] >>> 16;
+    }
+
+    protected void publish() {
+        if (!unpublished)
+            return;
+        long sequence = published + 1;
+        int index = (int) (sequence % BUFFERS);
+        System.arraycopy(rows, 0, frames[index], 0, planes * height * words);
+        formats[index] = format();
+        published = sequence;
+        unpublished = false;
+    }
+
+    /**
+     * Copy the published frame and return its format, width | height << 8 | planes << 16
+     * The copy is bounded by the destination so a torn format read retries instead of failing
+     */
+    protected int copyPublished(long[] destination) {
+        while (true) {
+            long sequence = published;
+            int index = (int) (sequence % BUFFERS);
+            int format = formats[index];
+            int length = length(format);
+            System.arraycopy(frames[index], 0, destination, 0, Math.min(length, destination.length));
+            VarHandle.acquireFence();
+            if (published - sequence < BUFFERS - 1) {
+                if (length > destination.length)
+                    throw new IllegalArgumentException("Destination too small: " + destination.length + " < " + length);
+                return format;
+            }
+        }
+    }
+
+    protected int copyPublished(LongBuffer destination) {
+        int position = destination.position();
+        int remaining = destination.remaining();
+        while (true) {
+            long sequence = published;
+            int index = (int) (sequence % BUFFERS);
+            int format = formats[index];
+            int length = length(format);
+            destination.position(position);
+            destination.put(frames[index], 0, Math.min(length, remaining));
+            VarHandle.acquireFence();
+            if (published - sequence < BUFFERS - 1) {
+                if (length > remaining) {
+                    destination.position(position);
+                    throw new IllegalArgumentException("Destination too small: " + remaining + " < " + length);
+                }
+                return format;
+            }
+        }
+    }
+
+    protected int copyPublished(ByteBuffer destination) {
+        int position = destination.position();
+        int remaining = destination.remaining() / 8;
+        boolean bigEndian = destination.order() == ByteOrder.BIG_ENDIAN;
+        while (true) {
+            long sequence = published;
+            int index = (int) (sequence % BUFFERS);
+            long[] frame = frames[index];
+            int format = formats[index];
+            int length = length(format);
+            int copy = Math.min(length, remaining);
+            destination.position(position);
+            for (int i = 0; i < copy; i++)
+                destination.putLong(bigEndian ? frame[i] : Long.reverseBytes(frame[i]));
+            VarHandle.acquireFence();
+            if (published - sequence < BUFFERS - 1) {
+                if (length > remaining) {
+                    destination.position(position);
+                    throw new IllegalArgumentException("Destination too small: " + remaining * 8 + " < " + length * 8);
+                }
+                return format;
+            }
+        }
+    }
+
+    /**
+     * Expand the published frame to one int per pixel
+     * Each pixel becomes a scale * scale square, the first row is written at offset
+     * The color is chosen by the plane bits of the pixel, plane 0 is the low bit
+     * The scaled frame must fit in maxWidth * maxHeight
+     */
+    protected int copyPublished(int[] pixels, int offset, int stride, int maxWidth, int maxHeight, int scale, int color0, int color1, int color2, int color3) {
+        if (scale <= 0)
+            throw new IllegalArgumentException("Scale must be positive: " + scale);
+        while (true) {
+            long sequence = published;
+            int index = (int) (sequence % BUFFERS);
+            long[] frame = frames[index];
+            int format = formats[index];
+            int width = format & 0xFF;
+            int height = format >> 8 & 0xFF;
+            int words = width >> 6;
+            int planeSize = format >>> 16 > 1 ? height * words : -1;
+            int lineWidth = width * scale;
+            boolean fits = maxWidth >= lineWidth && maxHeight >= height * scale;
+            boolean inside = offset >= 0 && offset + (long) (height * scale - 1) * stride + lineWidth <= pixels.length;
+            for (int y = 0; fits && inside && y < height; y++) {
+                int line = offset + y * scale * stride;
+                int pixel = line;
+                for (int x = 0; x < width; x++) {
+                    int word = y * words + (x >> 6);
+                    int bits = (int) ((frame[word] << x) >>> 63);
+                    if (planeSize >= 0)
+                        bits |= (int) ((frame[planeSize + word] << x) >>> 63) << 1;
+                    int color = bits == 0 ? color0 : bits == 1 ? color1 : bits == 2 ? color2 : color3;
+                    for (int i = 0; i < scale; i++)
+                        pixels[pixel++] = color;
+                }
+                for (int i = 1; i < scale; i++)
+                    System.arraycopy(pixels, line, pixels, line + i * stride, lineWidth);
+            }
+            VarHandle.acquireFence();
+            if (published - sequence < BUFFERS - 1) {
+                if (!fits)
+                    throw new IllegalArgumentException("Destination too small for " + width + "x" + height + " at scale " + scale);
+                if (!inside)
+                    throw new IllegalArgumentException("Pixels too small: " + pixels.length);
+                return format;
+            }
+        }
+    }
+
+    protected void set(int x, int y, boolean draw) {
+        long bit = Long.MIN_VALUE >>> x;
+        int word = y * words + (x >> 6);
+        if (draw)
+            rows[word] |= bit;
+        else
+            rows[word] &= ~bit;
+        markDirty(y, 1, x, x);
+    }
+
+    /**
+     * XOR a sprite onto the selected planes
+     * The start position wraps around the screen and the sprite is clipped at the edges
+     * Height 0 draws a 16*16 sprite of two bytes per line in the SCHIP and XO-CHIP modes
+     * With more than one plane selected, the sprite data of each plane follows the previous one
+     *
+     * @param x       Xpos
+     * @param y       Ypos
+     * @param address Sprite address
+     * @param height  Sprite height
+     * @return Whether any pixel was erased
+     */
+    protected boolean draw(int x, int y, int address, int height) {
+        x &= width - 1;
+        y &= this.height - 1;
+        int spriteWidth = 8;
+        if (height == 0 && extended) {
+            height = 16;
+            spriteWidth = 16;
+        }
+        int bytes = spriteWidth >> 3;
+        int lines = Math.min(height, this.height - y);
+        int word = x >> 6;
+        int shift = x & 63;
+        boolean carry = shift > 64 - spriteWidth && word + 1 < words;
+        int planeSize = this.height * words;
+        long collision = 0;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            int base = plane * planeSize + y * words + word;
+            for (int i = 0; i < lines; i++) {
+                int data = chip8.memory.read(address + i * bytes);
+                if (bytes == 2)
+                    data = data << 8 | chip8.memory.read(address + i * bytes + 1);
+                long bits = (long) data << (64 - spriteWidth);
+                long line = bits >>> shift;
+                int index = base + i * words;
+                collision |= rows[index] & line;
+                rows[index] ^= line;
+                if (carry) {
+                    line = bits << (64 - shift);
+                    collision |= rows[index + 1] & line;
+                    rows[index + 1] ^= line;
+                }
+            }
+            address += height * bytes;
+        }
+        markDirty(y, lines, x, Math.min(x + spriteWidth - 1, width - 1));
+        return collision != 0;
+    }
+
+    /**
+     * XOR a sprite onto the selected planes, wrapping around the screen edges
+     * Same as draw otherwise
+     *
+     * @param x       Xpos
+     * @param y       Ypos
+     * @param address Sprite address
+     * @param height  Sprite height
+     * @return Whether any pixel was erased
+     */
+    protected boolean drawWrapped(int x, int y, int address, int height) {
+        x &= width - 1;
+        y &= this.height - 1;
+        int spriteWidth = 8;
+        if (height == 0 && extended) {
+            height = 16;
+            spriteWidth = 16;
+        }
+        int bytes = spriteWidth >> 3;
+        int word = x >> 6;
+        int shift = x & 63;
+        boolean carry = shift > 64 - spriteWidth;
+        int nextWord = (word + 1) & (words - 1);
+        int planeSize = this.height * words;
+        long collision = 0;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            int base = plane * planeSize;
+            for (int i = 0; i < height; i++) {
+                int data = chip8.memory.read(address + i * bytes);
+                if (bytes == 2)
+                    data = data << 8 | chip8.memory.read(address + i * bytes + 1);
+                long bits = (long) data << (64 - spriteWidth);
+                long line = bits >>> shift;
+                int row = base + ((y + i) & (this.height - 1)) * words;
+                collision |= rows[row + word] & line;
+                rows[row + word] ^= line;
+                if (carry) {
+                    line = bits << (64 - shift);
+                    collision |= rows[row + nextWord] & line;
+                    rows[row + nextWord] ^= line;
+                }
+            }
+            address += height * bytes;
+        }
+        if (carry || y + height > this.height)
+            markDirty(0, this.height, 0, width - 1);
+        else
+            markDirty(y, height, x, x + spriteWidth - 1);
+        return collision != 0;
+    }
+
+    /**
+     * Scroll the selected planes down, rows scrolled in are empty
+     *
+     * @param lines Number of rows
+     */
+    protected void scrollDown(int lines) {
+        lines = Math.min(lines, height);
+        int planeSize = height * words;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            int base = plane * planeSize;
+            System.arraycopy(rows, base, rows, base + lines * words, planeSize - lines * words);
+            Arrays.fill(rows, base, base + lines * words, 0);
+        }
+        markDirty(0, height, 0, width - 1);
+    }
+
+    /**
+     * Scroll the selected planes up, rows scrolled in are empty
+     *
+     * @param lines Number of rows
+     */
+    protected void scrollUp(int lines) {
+        lines = Math.min(lines, height);
+        int planeSize = height * words;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            int base = plane * planeSize;
+            System.arraycopy(rows, base + lines * words, rows, base, planeSize - lines * words);
+            Arrays.fill(rows, base + planeSize - lines * words, base + planeSize, 0);
+        }
+        markDirty(0, height, 0, width - 1);
+    }
+
+    /**
+     * Scroll the selected planes right, columns scrolled in are empty
+     *
+     * @param pixels Number of columns, less than 64
+     */
+    protected void scrollRight(int pixels) {
+        int planeSize = height * words;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            for (int row = plane * planeSize; row < (plane + 1) * planeSize; row += words) {
+                for (int i = words - 1; i > 0; i--)
+                    rows[row + i] = rows[row + i] >>> pixels | rows[row + i - 1] << (64 - pixels);
+                rows[row] >>>= pixels;
+            }
+        }
+        markDirty(0, height, 0, width - 1);
+    }
+
+    /**
+     * Scroll the selected planes left, columns scrolled in are empty
+     *
+     * @param pixels Number of columns, less than 64
+     */
+    protected void scrollLeft(int pixels) {
+        int planeSize = height * words;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((planeMask & (1 << plane)) == 0)
+                continue;
+            for (int row = plane * planeSize; row < (plane + 1) * planeSize; row += words) {
+                for (int i = 0; i < words - 1; i++)
+                    rows[row + i] = rows[row + i] << pixels | rows[row + i + 1] >>> (64 - pixels);
+                rows[row + words - 1] <<= pixels;
+            }
+        }
+        markDirty(0, height, 0, width - 1);
+    }
+
+    protected void save(ByteBuffer buffer) {
+        buffer.put((byte) width);
+        buffer.put((byte) height);
+        buffer.put((byte) planes);
+        buffer.put((byte) planeMask);
+        int capacity = capacity();
+        for (int i = 0; i < capacity; i++)
+            buffer.putLong(rows[i]);
+    }
+
+    protected void load(ByteBuffer buffer) {
+        check(buffer, buffer.position());
+        init(chip8.mode);
+        this.width = buffer.get() & 0xFF;
+        this.height = buffer.get() & 0xFF;
+        buffer.get();
+        this.words = width >> 6;
+        this.planeMask = buffer.get() & 0xFF;
+        int capacity = capacity();
+        for (int i = 0; i < capacity; i++)
+            rows[i] = buffer.getLong();
+        markDirty(0, height, 0, width - 1);
+    }
+
+    protected void check(ByteBuffer buffer, int position) {
+        Chip8Mode mode = chip8.mode;
+        int width = buffer.get(position) & 0xFF;
+        int height = buffer.get(position + 1) & 0xFF;
+        int planes = buffer.get(position + 2) & 0xFF;
+        if (planes != mode.getPlanes() || (width != WIDTH && (width != HIRES_WIDTH || mode == Chip8Mode.CHIP8)) || height != width / 2)
+            throw new IllegalStateException("Display size mismatch: " + width + "x" + height + "x" + planes);
+    }
+
+    protected int getSaveSize() {
+        Chip8Mode mode = chip8.mode;
+        return 4 + (mode != Chip8Mode.CHIP8 ? mode.getPlanes() * HIRES_HEIGHT * HIRES_WIDTH / 64 : HEIGHT) * 8;
+    }
+
+    protected void collectDirty(DirtyRegion region) {
+        region.set(dirtyRows, dirtyMinX, dirtyMaxX);
+        dirtyRows = 0;
+        dirtyMinX = HIRES_WIDTH;
+        dirtyMaxX = -1;
+    }
+
+    private int capacity() {
+        return extended ? planes * HIRES_HEIGHT * HIRES_WIDTH / 64 : HEIGHT;
+    }
+
+    private int format() {
+        return width | height << 8 | planes << 16;
+    }
+
+    protected static int length(int format) {
+        return (format >>> 16) * (format >> 8 & 0xFF) * ((format & 0xFF) >> 6);
+    }
+
+    private void markDirty(int y, int height, int minX, int maxX) {
+        if (height <= 0)
+            return;
+        unpublished = true;
+        dirtyRows |= (height >= 64 ? -1L : (1L << height) - 1) << y;
+        dirtyMinX = Math.min(dirtyMinX, minX);
+        dirtyMaxX = Math.max(dirtyMaxX, maxX);
+    }
+}
@@ -0,0 +1,125 @@
+package red.felnull.ikenaichip8;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Encodes published frames into compact packets for remote viewers
+ * Add it as a GFX listener, every drawn frame becomes one packet in a reused ByteBuffer
+ * <p>
+ * Packet layout, big endian
+ * byte type (KEYFRAME or DELTA), int sequence, unsigned byte width, height and planes,
+ * then runs until the planes * height * width / 8 frame bytes are covered
+ * Each run is varint zero bytes, varint literal bytes and the literals, see RunLengthCodec
+ * A keyframe encodes the frame itself, a delta encodes the frame XOR the previous one
+ * Frame bytes are width / 8 per row and the planes one after another,
+ * the most significant bit of the first byte of a row is x = 0
+ *
+ * @author MORIMORI0317
+ */
+public class FrameEncoder implements Chip8.C8Listener {
+    public static final int KEYFRAME = 0;
+    public static final int DELTA = 1;
+    public static final int MAX_FRAME_BYTES = Display.MAX_WORDS * 8;
+    public static final int MAX_PACKET_SIZE = 8 + MAX_FRAME_BYTES * 3;
+    private final int keyframeInterval;
+    private final PacketListener listener;
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(MAX_PACKET_SIZE);
+    private final byte[] bytes = new byte[MAX_FRAME_BYTES];
+    private final byte[] runs = new byte[MAX_FRAME_BYTES * 2 + 10];
+    private final long[] current = new long[Display.MAX_WORDS];
+    private final long[] previous = new long[Display.MAX_WORDS];
+    private final FrameInfo info = new FrameInfo();
+    private int previousFormat = -1;
+    private final AtomicBoolean keyframeRequested = new AtomicBoolean(true);
+    private int sinceKeyframe;
+    private int sequence;
+
+    /**
+     * @param keyframeInterval Frames between keyframes
+     * @param listener         Receives every packet, may be null
+     */
+    public FrameEncoder(int keyframeInterval, PacketListener listener) {
+        if (keyframeInterval <= 0)
+            throw new IllegalArgumentException("Keyframe interval must be positive: " + keyframeInterval);
+        this.keyframeInterval = keyframeInterval;
+        this.listener = listener;
+    }
+
+    /**
+     * Encode the last published frame and pass the packet to the listener
+     *
+     * @param chip8 Emulator
+     */
+    @Override
+    public void update(Chip8 chip8) {
+        chip8.getFrame(current, info);
+        encode(current, info.getWidth(), info.getHeight(), info.getPlanes());
+        if (listener != null)
+            listener.packet(packet);
+    }
+
+    /**
+     * Encode a frame
+     * The returned buffer is reused, it is valid until the next frame is encoded
+     *
+     * A size change always starts with a keyframe
+     *
+     * @param frame  Rows, same layout as Chip8.getFrame(long[])
+     * @param width  Width, 64 or 128
+     * @param height Height
+     * @param planes Plane count
+     * @return Packet, from position 0 to limit
+     */
+    public ByteBuffer encode(long[] frame, int width, int height, int planes) {
+        int format = width | height << 8 | planes << 16;
+        int words = planes * height * width / 64;
+        boolean keyframe = keyframeRequested.getAndSet(false) || ++sinceKeyframe >= keyframeInterval || format != previousFormat;
+        if (keyframe)
+            sinceKeyframe = 0;
+        for (int w = 0; w < words; w++) {
+            long row = keyframe ? frame[w] : frame[w] ^ previous[w];
+            for (int i = 0; i < 8; i++)
+                bytes[w * 8 + i] = (byte) (row >>> (56 - i * 8));
+        }
+        System.arraycopy(frame, 0, previous, 0, words);
+        previousFormat = format;
+
+        packet.clear();
+        packet.put((byte) (keyframe ? KEYFRAME : DELTA));
+        packet.putInt(sequence++);
+        packet.put((byte) width);
+        packet.put((byte) height);
+        packet.put((byte) planes);
+        packet.put(runs, 0, RunLengthCodec.encode(null, bytes, words * 8, runs, 0));
+        packet.flip();
+        return packet;
+    }
+
+    /**
+     * Make the next packet a keyframe, for example when a viewer connects
+     * Can be called from any thread
+     */
+    public void requestKeyframe() {
+        keyframeRequested.set(true);
+    }
+
+    /**
+     * Get the last encoded packet
+     *
+     * @return Packet, from position 0 to limit
+     */
+    public ByteBuffer getPacket() {
+        return packet;
+    }
+
+    public static interface PacketListener {
+        /**
+         * Called on the emulator thread for every packet
+         * The buffer is reused, copy or write it out before returning
+         *
+         * @param packet Packet, from position 0 to limit
+         */
+        void packet(ByteBuffer packet);
+    }
+}
@@ -0,0 +1,58 @@
+package red.felnull.ikenaichip8;
+
+/**
+ * Format of a copied frame
+ * Filled by Chip8.getFrame from the same read as the rows, so it always matches them
+ * The instance can be reused for every copy
+ *
+ * @author MORIMORI0317
+ */
+public class FrameInfo {
+    private int format;
+
+    public FrameInfo() {
+    }
+
+    protected void set(int format) {
+        this.format = format;
+    }
+
+    /**
+     * Get the width
+     * 64, or 128 in the SCHIP and XO-CHIP hi-res mode
+     *
+     * @return Width
+     */
+    public int getWidth() {
+        return format & 0xFF;
+    }
+
+    /**
+     * Get the height
+     * 32, or 64 in the SCHIP and XO-CHIP hi-res mode
+     *
+     * @return Height
+     */
+    public int getHeight() {
+        return format >> 8 & 0xFF;
+    }
+
+    /**
+     * Get the number of bit planes
+     * 2 in XO-CHIP mode, otherwise 1
+     *
+     * @return Plane count
+     */
+    public int getPlanes() {
+        return format >>> 16;
+    }
+
+    /**
+     * Get the number of long in the frame rows
+     *
+     * @return Rows length
+     */
+    public int getLength() {
+        return Display.length(format);
+    }
+}
@@ -0,0 +1,194 @@
+package red.felnull.ikenaichip8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Key events keyed by instruction index, plus the random seed
+ * Each event is a varint of the instructions since the previous event and one byte for the key
+ *
+ * @author MORIMORI0317
+ */
+public class InputLog {
+    private static final int MAGIC = 0x4338494C;
+    private static final int VERSION = 1;
+    private final long seed;
+    private byte[] data = new byte[256];
+    private int length;
+    private int events;
+    private long lastCycle;
+    private int position;
+    private long nextCycle;
+
+    /**
+     * @param seed Random seed used while recording and replaying
+     */
+    public InputLog(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Get the random seed
+     *
+     * @return Seed
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get the number of key events
+     *
+     * @return Event count
+     */
+    public int getEventCount() {
+        return events;
+    }
+
+    /**
+     * Write the log
+     *
+     * @param stream Destination stream
+     * @throws IOException On write failure
+     */
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(seed);
+        out.writeInt(events);
+        out.writeInt(length);
+        out.write(data, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Read a log written by writeTo
+     *
+     * @param stream Source stream
+     * @return Input log
+     * @throws IOException On read failure
+     */
+    public static InputLog readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not an input log");
+        int version = in.readShort();
+        if (version != VERSION)
+            throw new IOException("Unsupported input log version: " + version);
+        InputLog log = new InputLog(in.readLong());
+        log.events = in.readInt();
+        log.length = in.readInt();
+        if (log.events < 0 || log.length < 0)
+            throw new IOException("Corrupt input log");
+        log.data = new byte[Math.max(log.length, 16)];
+        in.readFully(log.data, 0, log.length);
+        return log;
+    }
+
+    /**
+     * Get the log as bytes
+     *
+     * @return Log data
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(length + 22);
+        try {
+            writeTo(bout);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bout.toByteArray();
+    }
+
+    protected void clear() {
+        length = 0;
+        events = 0;
+        lastCycle = 0;
+    }
+
+    protected void add(long cycle, int event) {
+        if (length + 11 > data.length)
+            data = Arrays.copyOf(data, data.length * 2);
+        long delta = cycle - lastCycle;
+        while ((delta & ~0x7FL) != 0) {
+            data[length++] = (byte) ((delta & 0x7F) | 0x80);
+            delta >>>= 7;
+        }
+        data[length++] = (byte) delta;
+        data[length++] = (byte) event;
+        lastCycle = cycle;
+        events++;
+    }
+
+    protected void rewind() {
+        position = 0;
+        nextCycle = 0;
+        readNextCycle();
+    }
+
+    /**
+     * Move the replay position to the first event at or after the cycle
+     *
+     * @param cycle Instruction index
+     */
+    protected void seek(long cycle) {
+        rewind();
+        while (nextCycle < cycle) {
+            position++;
+            readNextCycle();
+        }
+    }
+
+    /**
+     * Drop the recorded events at or after the cycle
+     *
+     * @param cycle Instruction index
+     */
+    protected void truncate(long cycle) {
+        rewind();
+        int end = 0;
+        int kept = 0;
+        long last = 0;
+        while (nextCycle < cycle) {
+            last = nextCycle;
+            end = ++position;
+            kept++;
+            readNextCycle();
+        }
+        length = end;
+        events = kept;
+        lastCycle = last;
+    }
+
+    protected long peekCycle() {
+        return nextCycle;
+    }
+
+    protected int next() {
+        int event = data[position++] & 0xFF;
+        readNextCycle();
+        return event;
+    }
+
+    private void readNextCycle() {
+        if (position >= length) {
+            nextCycle = Long.MAX_VALUE;
+            return;
+        }
+        long delta = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = data[position++] & 0xFF;
+            delta |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        nextCycle += delta;
+    }
+}
@@ -1,46 +1,144 @@
 package red.felnull.ikenaichip8;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+/**
+ * Paged memory
+ * Pages stay shared with the ROM image until they are first written
+ * The size follows the mode, 4KB or 64KB for XO-CHIP
+ *
+ * @author MORIMORI0317
+ */
 public class Memory {
+    protected static final int SIZE = 1024 * 4;
+    protected static final int PAGE_BITS = 8;
+    protected static final int PAGE_SIZE = 1 << PAGE_BITS;
     private final Chip8 chip8;
-    protected int[] memory = new int[1024 * 4];
-    private final int[] fonts = new int[]{
-            0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
-            0x20, 0x60, 0x20, 0x20, 0x70, // 1
-            0xF0, 0x10, 0xF0, 0x80, 0xF0, // 2
-            0xF0, 0x10, 0xF0, 0x10, 0xF0, // 3
-            0x90, 0x90, 0xF0, 0x10, 0x10, // 4
-            0xF0, 0x80, 0xF0, 0x10, 0xF0, // 5
-            0xF0, 0x80, 0xF0, 0x90, 0xF0, // 6
-            0xF0, 0x10, 0x20, 0x40, 0x40, // 7
-            0xF0, 0x90, 0xF0, 0x90, 0xF0, // 8
-            0xF0, 0x90, 0xF0, 0x10, 0xF0, // 9
-            0xF0, 0x90, 0xF0, 0x90, 0x90, // A
-            0xE0, 0x90, 0xE0, 0x90, 0xE0, // B
-            0xF0, 0x80, 0x80, 0x80, 0xF0, // C
-            0xE0, 0x90, 0x90, 0x90, 0xE0, // D
-            0xF0, 0x80, 0xF0, 0x80, 0xF0, // E
-            0xF0, 0x80, 0xF0, 0x80, 0x80  // F
-    };
+    private byte[][] pages = new byte[SIZE >> PAGE_BITS][];
+    private byte[][] privatePages = new byte[SIZE >> PAGE_BITS][];
+    private boolean[] owned = new boolean[SIZE >> PAGE_BITS];
+    private int size = SIZE;
+    private RomImage image;
+    private Chip8Mode mode;
+    private int quirks;
 
     protected Memory(Chip8 chip8) {
         this.chip8 = chip8;
     }
 
     protected int read(int address) {
-        return memory[address];
+        return pages[address >> PAGE_BITS][address & (PAGE_SIZE - 1)] & 0xFF;
     }
 
-    protected void init(byte[] rom) {
-        Arrays.fill(memory, 0);
-        System.arraycopy(fonts, 0, memory, 0, fonts.length);
-        for (int i = 0; i < rom.length; i++) {
-            memory[i + 512] = rom[i] & 0xFF;
-        }
+    protected void init(RomImage image, Chip8Mode mode) {
+        resize(mode.getMemorySize());
+        System.arraycopy(image.getPages(mode), 0, pages, 0, pages.length);
+        Arrays.fill(owned, false);
+        this.image = image;
+        this.mode = mode;
+        this.quirks = chip8.quirks;
+    }
+
+    /**
+     * Get the analysis of the image the shared pages come from
+     *
+     * @return Analysis, null before the first initialize
+     */
+    protected RomAnalysis getAnalysis() {
+        return image == null ? null : image.getAnalysis(mode, quirks);
+    }
+
+    private void resize(int size) {
+        if (size == this.size)
+            return;
+        this.size = size;
+        this.pages = new byte[size >> PAGE_BITS][];
+        this.privatePages = new byte[size >> PAGE_BITS][];
+        this.owned = new boolean[size >> PAGE_BITS];
     }
 
     protected void write(int address, int value) {
-        memory[address] = value;
+        writablePage(address >> PAGE_BITS)[address & (PAGE_SIZE - 1)] = (byte) value;
+        if (chip8.blockCache != null)
+            chip8.blockCache.invalidate(address, 1);
+    }
+
+    protected void store(int address, int[] values, int length) {
+        for (int i = 0; i < length; i++)
+            writablePage((address + i) >> PAGE_BITS)[(address + i) & (PAGE_SIZE - 1)] = (byte) values[i];
+        if (chip8.blockCache != null)
+            chip8.blockCache.invalidate(address, length);
+    }
+
+    protected void load(int address, int[] values, int length) {
+        for (int i = 0; i < length; i++)
+            values[i] = read(address + i);
+    }
+
+    protected int size() {
+        return size;
+    }
+
+    protected boolean isShared(int address) {
+        return !owned[address >> PAGE_BITS];
+    }
+
+    private byte[] writablePage(int index) {
+        if (!owned[index])
+            System.arraycopy(pages[index], 0, ownPage(index), 0, PAGE_SIZE);
+        return pages[index];
+    }
+
+    private byte[] ownPage(int index) {
+        byte[] page = privatePages[index];
+        if (page == null) {
+            page = new byte[PAGE_SIZE];
+            privatePages[index] = page;
+        }
+        pages[index] = page;
+        owned[index] = true;
+        return page;
+    }
+
+    protected void save(ByteBuffer buffer) {
+        buffer.putInt(size);
+        for (byte[] page : pages)
+            buffer.put(page);
+    }
+
+    protected void load(ByteBuffer buffer) {
+        check(buffer, buffer.position());
+        int length = buffer.getInt();
+        resize(length);
+        for (int i = 0; i < pages.length; i++) {
+            if (!owned[i]) {
+                if (pages[i] != null && samePage(buffer, pages[i])) {
+                    buffer.position(buffer.position() + PAGE_SIZE);
+                    continue;
+                }
+                ownPage(i);
+            }
+            buffer.get(pages[i]);
+        }
+    }
+
+    protected void check(ByteBuffer buffer, int position) {
+        int length = buffer.getInt(position);
+        if (length != chip8.mode.getMemorySize())
+            throw new IllegalStateException("Memory size mismatch: " + length);
+    }
+
+    private static boolean samePage(ByteBuffer buffer, byte[] page) {
+        int position = buffer.position();
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            if (buffer.get(position + i) != page[i])
+                return false;
+        }
+        return true;
+    }
+
+    protected int getSaveSize() {
+        return 4 + chip8.mode.getMemorySize();
     }
 }
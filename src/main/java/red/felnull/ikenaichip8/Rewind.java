@@ -0,0 +1,199 @@
+package red.felnull.ikenaichip8;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Rewind history of an emulator
+ * Records a snapshot every interval frames as an XOR/RLE delta against the previous one, see RunLengthCodec
+ * The deltas are kept in a fixed size ring buffer, the oldest are dropped when it is full
+ * Add it as a cycle listener or call update once per frame from the emulator thread
+ * The history is forgotten when the snapshot size changes, such as after setMode
+ *
+ * @author MORIMORI0317
+ */
+public class Rewind implements Chip8.C8Listener {
+    private final Chip8 chip8;
+    private final int interval;
+    private final byte[] ring;
+    private byte[] encoded;
+    private ByteBuffer current;
+    private ByteBuffer next;
+    private boolean hasCurrent;
+    private int frame;
+    private int head;
+    private int tail;
+    private int used;
+    private int count;
+
+    /**
+     * @param chip8         Emulator
+     * @param interval      Frames between recorded points
+     * @param capacityBytes Size of the delta ring buffer
+     */
+    public Rewind(Chip8 chip8, int interval, int capacityBytes) {
+        if (interval <= 0)
+            throw new IllegalArgumentException("Interval must be positive: " + interval);
+        this.chip8 = chip8;
+        this.interval = interval;
+        this.ring = new byte[capacityBytes];
+        allocate(chip8.getSnapshotSize());
+    }
+
+    private void allocate(int size) {
+        this.encoded = new byte[size * 2 + 10];
+        this.current = ByteBuffer.allocate(size);
+        this.next = ByteBuffer.allocate(size);
+    }
+
+    /**
+     * Drop the history when the snapshot size has changed
+     *
+     * @return Whether the size was unchanged
+     */
+    private boolean checkSize() {
+        int size = chip8.getSnapshotSize();
+        if (size == current.capacity())
+            return true;
+        allocate(size);
+        clear();
+        return false;
+    }
+
+    /**
+     * Count a frame and record a point every interval frames
+     *
+     * @param chip8 Emulator
+     */
+    @Override
+    public void update(Chip8 chip8) {
+        if (++frame >= interval) {
+            frame = 0;
+            record();
+        }
+    }
+
+    /**
+     * Record the current state now
+     */
+    public void record() {
+        checkSize();
+        next.clear();
+        chip8.snapshot(next);
+        if (hasCurrent) {
+            int length = RunLengthCodec.encode(current.array(), next.array(), next.capacity(), encoded, 0);
+            push(length);
+        }
+        ByteBuffer swap = current;
+        current = next;
+        next = swap;
+        hasCurrent = true;
+    }
+
+    /**
+     * Restore the previous recorded point
+     * The newest point is dropped from the history
+     *
+     * @return Whether there was a point to go back to
+     */
+    public boolean stepBack() {
+        if (!checkSize() || count == 0)
+            return false;
+        pop(current.array());
+        current.clear();
+        chip8.restore(current);
+        frame = 0;
+        return true;
+    }
+
+    /**
+     * Go back the given number of recorded points
+     *
+     * @param points Number of points
+     * @return Number of points actually gone back
+     */
+    public int stepBack(int points) {
+        if (!checkSize())
+            return 0;
+        int done = 0;
+        while (done < points && count > 0) {
+            pop(current.array());
+            done++;
+        }
+        if (done > 0) {
+            current.clear();
+            chip8.restore(current);
+            frame = 0;
+        }
+        return done;
+    }
+
+    /**
+     * Number of points that can be gone back to
+     *
+     * @return Point count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Bytes used by the delta history
+     *
+     * @return Used bytes
+     */
+    public int getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * Forget the whole history
+     */
+    public void clear() {
+        head = tail = used = count = frame = 0;
+        hasCurrent = false;
+    }
+
+    private void push(int length) {
+        int total = length + 8;
+        if (total > ring.length) {
+            head = tail = used = count = 0;
+            return;
+        }
+        while (ring.length - used < total) {
+            int oldest = readInt(tail);
+            tail = (tail + oldest + 8) % ring.length;
+            used -= oldest + 8;
+            count--;
+        }
+        writeInt(head, length);
+        for (int i = 0; i < length; i++)
+            ring[(head + 4 + i) % ring.length] = encoded[i];
+        writeInt((head + 4 + length) % ring.length, length);
+        head = (head + total) % ring.length;
+        used += total;
+        count++;
+    }
+
+    private void pop(byte[] state) {
+        int length = readInt((head - 4 + ring.length) % ring.length);
+        int start = (head - 4 - length + ring.length) % ring.length;
+        for (int i = 0; i < length; i++)
+            encoded[i] = ring[(start + i) % ring.length];
+        RunLengthCodec.decode(encoded, 0, length, state);
+        head = (start - 4 + ring.length) % ring.length;
+        used -= length + 8;
+        count--;
+    }
+
+    private int readInt(int position) {
+        int value = 0;
+        for (int i = 0; i < 4; i++)
+            value = value << 8 | (ring[(position + i) % ring.length] & 0xFF);
+        return value;
+    }
+
+    private void writeInt(int position, int value) {
+        for (int i = 0; i < 4; i++)
+            ring[(position + i) % ring.length] = (byte) (value >>> (24 - i * 8));
+    }
+}
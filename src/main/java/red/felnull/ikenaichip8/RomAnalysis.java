@@ -0,0 +1,168 @@
+package red.felnull.ikenaichip8;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Load time analysis of a ROM image for one mode and quirk set
+ * Pre-decodes every address of the ROM region and traces the code reachable from 0x200
+ * Created once per image, mode and quirk set and shared by all emulators, see RomImage.getAnalysis
+ * <p>
+ * The trace follows jumps, calls, returns and skips
+ * BNNN jump tables can not be followed, code only reached through them is UNKNOWN
+ *
+ * @author MORIMORI0317
+ */
+public final class RomAnalysis {
+    public static final int UNKNOWN = 0;
+    public static final int CODE = 1;
+    public static final int OPERAND = 2;
+    public static final int DATA = 3;
+    private static final int START = 0x200;
+    private final Chip8Mode mode;
+    private final int end;
+    private final byte[] marks;
+    private final CPU.ProcessorCode[] codes;
+    private final int[] opcodes;
+    private final BlockCache.Block[] blocks;
+    private int instructions;
+
+    protected RomAnalysis(byte[][] pages, int length, Chip8Mode mode, int quirks) {
+        this.mode = mode;
+        this.end = START + length;
+        this.marks = new byte[length];
+        this.codes = new CPU.ProcessorCode[length];
+        this.opcodes = new int[length];
+        this.blocks = new BlockCache.Block[length];
+        CPU.ProcessorCode[] table = CPU.ProcessorCode.getTable(mode, quirks);
+        for (int i = 0; i + 1 < length; i++) {
+            int address = START + i;
+            int opcode = read(pages, address) << 8 | read(pages, address + 1);
+            codes[i] = table[opcode];
+            opcodes[i] = opcode;
+        }
+        trace();
+    }
+
+    private static int read(byte[][] pages, int address) {
+        return pages[address >> Memory.PAGE_BITS][address & (Memory.PAGE_SIZE - 1)] & 0xFF;
+    }
+
+    private void trace() {
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(START);
+        while (!pending.isEmpty()) {
+            int pc = pending.pop();
+            while (isInstruction(pc) && marks[pc - START] != CODE) {
+                CPU.ProcessorCode code = codes[pc - START];
+                int opcode = opcodes[pc - START];
+                marks[pc - START] = CODE;
+                marks[pc - START + 1] = OPERAND;
+                instructions++;
+                int next = pc + 2;
+                switch (code) {
+                    case _00EE:
+                    case _00FD:
+                    case _BNNN:
+                    case _BXNN:
+                        next = -1;
+                        break;
+                    case _1NNN:
+                        next = opcode & 0x0FFF;
+                        break;
+                    case _2NNN:
+                        pending.push(opcode & 0x0FFF);
+                        break;
+                    case _3XNN:
+                    case _4XNN:
+                    case _5XY0:
+                    case _9XY0:
+                    case _EX9E:
+                    case _EXA1:
+                        pending.push(isInstruction(next) && codes[next - START] == CPU.ProcessorCode._F000 ? pc + 6 : pc + 4);
+                        break;
+                    case _ANNN:
+                        markData(opcode & 0x0FFF);
+                        break;
+                    case _F000:
+                        if (pc + 3 < end) {
+                            marks[pc - START + 2] = OPERAND;
+                            marks[pc - START + 3] = OPERAND;
+                            markData(opcodes[pc - START + 2]);
+                        }
+                        next = pc + 4;
+                        break;
+                }
+                pc = next;
+            }
+        }
+    }
+
+    private boolean isInstruction(int address) {
+        return address >= START && address + 1 < end && codes[address - START] != null;
+    }
+
+    private void markData(int address) {
+        if (address >= START && address < end && marks[address - START] == UNKNOWN)
+            marks[address - START] = DATA;
+    }
+
+    /**
+     * Get the shared block starting at the address
+     * Only valid while the pages the block covers are unwritten
+     * Blocks are built on first use, a race between emulators only builds one twice
+     *
+     * @param address Memory address
+     * @return Block, null when the address is outside the ROM or not an instruction
+     */
+    protected BlockCache.Block getBlock(int address) {
+        if (address < START || address + 1 >= end || codes[address - START] == null)
+            return null;
+        BlockCache.Block block = blocks[address - START];
+        if (block == null) {
+            block = BlockCache.compile(codes, opcodes, START, end, address);
+            blocks[address - START] = block;
+        }
+        return block;
+    }
+
+    /**
+     * Get what the trace found at the address
+     *
+     * @param address Memory address
+     * @return CODE, OPERAND, DATA or UNKNOWN
+     */
+    public int getMark(int address) {
+        if (address < START || address >= end)
+            return UNKNOWN;
+        return marks[address - START];
+    }
+
+    /**
+     * Whether an instruction reachable from 0x200 starts at the address
+     *
+     * @param address Memory address
+     * @return Is code
+     */
+    public boolean isCode(int address) {
+        return getMark(address) == CODE;
+    }
+
+    /**
+     * Get the number of reachable instructions
+     *
+     * @return Instruction count
+     */
+    public int getInstructionCount() {
+        return instructions;
+    }
+
+    /**
+     * Get the mode the ROM was decoded for
+     *
+     * @return Mode
+     */
+    public Chip8Mode getMode() {
+        return mode;
+    }
+}
@@ -0,0 +1,258 @@
+package red.felnull.ikenaichip8;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only initial memory image of a ROM
+ * Images are shared between all emulators loading the same ROM data
+ *
+ * @author MORIMORI0317
+ */
+public final class RomImage {
+    private static final Map<Key, CacheReference> CACHE = new ConcurrentHashMap<>();
+    private static final ReferenceQueue<RomImage> QUEUE = new ReferenceQueue<>();
+    private static final int[] FONTS = new int[]{
+            0xF0, 0x90, 0x90, 0x90, 0xF0, // 0
+            0x20, 0x60, 0x20, 0x20, 0x70, // 1
+            0xF0, 0x10, 0xF0, 0x80, 0xF0, // 2
+            0xF0, 0x10, 0xF0, 0x10, 0xF0, // 3
+            0x90, 0x90, 0xF0, 0x10, 0x10, // 4
+            0xF0, 0x80, 0xF0, 0x10, 0xF0, // 5
+            0xF0, 0x80, 0xF0, 0x90, 0xF0, // 6
+            0xF0, 0x10, 0x20, 0x40, 0x40, // 7
+            0xF0, 0x90, 0xF0, 0x90, 0xF0, // 8
+            0xF0, 0x90, 0xF0, 0x10, 0xF0, // 9
+            0xF0, 0x90, 0xF0, 0x90, 0x90, // A
+            0xE0, 0x90, 0xE0, 0x90, 0xE0, // B
+            0xF0, 0x80, 0x80, 0x80, 0xF0, // C
+            0xE0, 0x90, 0x90, 0x90, 0xE0, // D
+            0xF0, 0x80, 0xF0, 0x80, 0xF0, // E
+            0xF0, 0x80, 0xF0, 0x80, 0x80  // F
+    };
+    private static final int[] BIG_FONTS = new int[]{
+            0xFF, 0xFF, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, // 0
+            0x18, 0x78, 0x78, 0x18, 0x18, 0x18, 0x18, 0x18, 0xFF, 0xFF, // 1
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // 2
+            0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 3
+            0xC3, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0x03, 0x03, // 4
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 5
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 6
+            0xFF, 0xFF, 0x03, 0x03, 0x06, 0x0C, 0x18, 0x18, 0x18, 0x18, // 7
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, // 8
+            0xFF, 0xFF, 0xC3, 0xC3, 0xFF, 0xFF, 0x03, 0x03, 0xFF, 0xFF, // 9
+            0x7E, 0xFF, 0xC3, 0xC3, 0xC3, 0xFF, 0xFF, 0xC3, 0xC3, 0xC3, // A
+            0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, 0xC3, 0xC3, 0xFC, 0xFC, // B
+            0x3C, 0xFF, 0xC3, 0xC0, 0xC0, 0xC0, 0xC0, 0xC3, 0xFF, 0x3C, // C
+            0xFC, 0xFE, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xC3, 0xFE, 0xFC, // D
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, // E
+            0xFF, 0xFF, 0xC0, 0xC0, 0xFF, 0xFF, 0xC0, 0xC0, 0xC0, 0xC0  // F
+    };
+    protected static final int BIG_FONT_ADDRESS = FONTS.length;
+    private static final int MAX_SIZE = Chip8Mode.XOCHIP.getMemorySize();
+    private static final byte[] EMPTY_PAGE = new byte[Memory.PAGE_SIZE];
+    private final ByteBuffer rom;
+    private final int length;
+    private final long hash;
+    private final byte[][] romPages;
+    private final byte[][][] modePages = new byte[Chip8Mode.values().length][][];
+    private final RomAnalysis[] analyses = new RomAnalysis[Chip8Mode.values().length << Chip8Quirk.values().length];
+
+    private RomImage(ByteBuffer rom, long hash) {
+        this.rom = rom;
+        this.length = rom.remaining();
+        this.hash = hash;
+        int romEnd = 512 + length;
+        this.romPages = new byte[MAX_SIZE >> Memory.PAGE_BITS][];
+        for (int i = 0; i < romPages.length; i++)
+            romPages[i] = i << Memory.PAGE_BITS < romEnd ? new byte[Memory.PAGE_SIZE] : EMPTY_PAGE;
+        for (int i = 0; i < FONTS.length; i++)
+            romPages[0][i] = (byte) FONTS[i];
+        ByteBuffer source = rom.duplicate();
+        for (int i = 0; i < length; ) {
+            int address = i + 512;
+            int count = Math.min(length - i, Memory.PAGE_SIZE - (address & (Memory.PAGE_SIZE - 1)));
+            source.get(romPages[address >> Memory.PAGE_BITS], address & (Memory.PAGE_SIZE - 1), count);
+            i += count;
+        }
+    }
+
+    /**
+     * Get the shared image of the ROM data
+     *
+     * @param rom Rom data
+     * @return Rom image
+     */
+    public static RomImage of(byte[] rom) {
+        ByteBuffer buffer = ByteBuffer.wrap(rom);
+        return of(buffer, hash(buffer), false);
+    }
+
+    /**
+     * Get the shared image of the ROM data from the position to the limit of the buffer
+     * A read-only buffer, such as a read-only mapped file, is used without copying and must not change afterwards
+     * Other buffers are copied
+     * The position of the buffer is not changed
+     *
+     * @param rom Rom data
+     * @return Rom image
+     */
+    public static RomImage of(ByteBuffer rom) {
+        ByteBuffer buffer = rom.slice();
+        return of(buffer, hash(buffer), buffer.isReadOnly());
+    }
+
+    /**
+     * Get the shared image of read-only ROM data whose hash is already known
+     *
+     * @param rom  Rom data, position 0 to limit
+     * @param hash FNV-1a hash of the data
+     * @return Rom image
+     */
+    protected static RomImage of(ByteBuffer rom, long hash) {
+        return of(rom, hash, true);
+    }
+
+    private static RomImage of(ByteBuffer rom, long hash, boolean readOnly) {
+        if (rom.remaining() > MAX_SIZE - 512)
+            throw new IllegalStateException("Rom too large: " + rom.remaining());
+        expunge();
+        CacheReference reference = CACHE.get(new Key(rom, hash));
+        RomImage image = reference == null ? null : reference.get();
+        if (image == null) {
+            ByteBuffer data = rom;
+            if (!readOnly) {
+                data = ByteBuffer.allocate(rom.remaining());
+                data.put(rom.duplicate()).flip();
+            }
+            image = new RomImage(data.asReadOnlyBuffer(), hash);
+            Key key = new Key(image.rom, hash);
+            CACHE.put(key, new CacheReference(image, key));
+        }
+        return image;
+    }
+
+    /**
+     * Get the initial pages of the mode
+     * The SCHIP and XO-CHIP modes also have the big font at BIG_FONT_ADDRESS
+     *
+     * @param mode Mode
+     * @return Pages, shared and never written
+     */
+    protected synchronized byte[][] getPages(Chip8Mode mode) {
+        byte[][] pages = modePages[mode.ordinal()];
+        if (pages == null) {
+            if (length > mode.getMemorySize() - 512)
+                throw new IllegalStateException("Rom too large for " + mode + ": " + length);
+            pages = Arrays.copyOf(romPages, mode.getMemorySize() >> Memory.PAGE_BITS);
+            if (mode != Chip8Mode.CHIP8) {
+                pages[0] = pages[0].clone();
+                for (int i = 0; i < BIG_FONTS.length; i++)
+                    pages[0][BIG_FONT_ADDRESS + i] = (byte) BIG_FONTS[i];
+            }
+            modePages[mode.ordinal()] = pages;
+        }
+        return pages;
+    }
+
+    /**
+     * Get the load time analysis of the mode with the default quirks
+     * Built on first use and shared by every emulator loading the same ROM data
+     *
+     * @param mode Mode
+     * @return Analysis
+     */
+    public RomAnalysis getAnalysis(Chip8Mode mode) {
+        return getAnalysis(mode, Chip8Quirk.defaults());
+    }
+
+    /**
+     * Get the load time analysis of the mode and quirks
+     * Built on first use and shared by every emulator loading the same ROM data
+     *
+     * @param mode   Mode
+     * @param quirks Quirks
+     * @return Analysis
+     */
+    public RomAnalysis getAnalysis(Chip8Mode mode, Set<Chip8Quirk> quirks) {
+        return getAnalysis(mode, Chip8Quirk.toMask(quirks));
+    }
+
+    protected synchronized RomAnalysis getAnalysis(Chip8Mode mode, int quirks) {
+        int index = mode.ordinal() << Chip8Quirk.values().length | quirks;
+        RomAnalysis analysis = analyses[index];
+        if (analysis == null) {
+            analysis = new RomAnalysis(getPages(mode), length, mode, quirks);
+            analyses[index] = analysis;
+        }
+        return analysis;
+    }
+
+    /**
+     * Get the 64bit FNV-1a hash of the ROM data
+     *
+     * @return Rom hash
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the ROM data length
+     *
+     * @return Rom length
+     */
+    public int getLength() {
+        return length;
+    }
+
+    private static void expunge() {
+        Reference<? extends RomImage> reference;
+        while ((reference = QUEUE.poll()) != null)
+            CACHE.remove(((CacheReference) reference).key, reference);
+    }
+
+    protected static long hash(ByteBuffer rom) {
+        long hash = 0xCBF29CE484222325L;
+        for (int i = rom.position(); i < rom.limit(); i++) {
+            hash ^= rom.get(i) & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    private static final class CacheReference extends WeakReference<RomImage> {
+        private final Key key;
+
+        private CacheReference(RomImage image, Key key) {
+            super(image, QUEUE);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final ByteBuffer rom;
+        private final long hash;
+
+        private Key(ByteBuffer rom, long hash) {
+            this.rom = rom;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).hash == hash && ((Key) o).rom.equals(rom);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hash);
+        }
+    }
+}
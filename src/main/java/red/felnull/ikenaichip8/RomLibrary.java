@@ -0,0 +1,338 @@
+package red.felnull.ikenaichip8;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packed archive of many ROMs, read through a memory-mapped file
+ * Images are created straight from the mapped data, nothing is read until a ROM is used
+ * <p>
+ * File layout, big endian
+ * int magic, short version, short reserved, int entry count,
+ * then one 24 byte entry per ROM sorted by hash, the UTF-8 names and the ROM data
+ * An entry is long hash, int data offset, int data length, int name offset, short name length, byte mode and one reserved byte
+ * ROMs with the same data share it
+ *
+ * @author MORIMORI0317
+ */
+public class RomLibrary {
+    private static final int MAGIC = 0x43384C42;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+    private static final int ENTRY_SIZE = 24;
+    private final ByteBuffer buffer;
+    private final int count;
+    private Map<String, Integer> names;
+
+    private RomLibrary(ByteBuffer buffer) {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IllegalStateException("Not a ROM library");
+        int version = buffer.getShort(4);
+        if (version != VERSION)
+            throw new IllegalStateException("Unsupported ROM library version: " + version);
+        int count = buffer.getInt(8);
+        if (count < 0 || HEADER_SIZE + (long) count * ENTRY_SIZE > buffer.capacity())
+            throw new IllegalStateException("Not a ROM library: entry table does not fit, " + count + " entries");
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Map a library file
+     * The file stays mapped until the library and every image created from it are unreachable
+     *
+     * @param path Library file
+     * @return Library
+     * @throws IOException On read failure
+     */
+    public static RomLibrary open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IllegalStateException("ROM library too large: " + channel.size());
+            return new RomLibrary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Get the number of ROMs
+     *
+     * @return Rom count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the 64bit FNV-1a hash of a ROM, same as RomImage.getHash
+     *
+     * @param index Index
+     * @return Rom hash
+     */
+    public long getHash(int index) {
+        return buffer.getLong(entry(index));
+    }
+
+    /**
+     * Get the file name of a ROM
+     *
+     * @param index Index
+     * @return Name
+     */
+    public String getName(int index) {
+        int entry = entry(index);
+        byte[] name = new byte[buffer.getShort(entry + 20) & 0xFFFF];
+        ByteBuffer source = buffer.duplicate();
+        source.position(check(buffer.getInt(entry + 16), name.length));
+        source.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Get the data length of a ROM
+     *
+     * @param index Index
+     * @return Rom length
+     */
+    public int getLength(int index) {
+        return buffer.getInt(entry(index) + 12);
+    }
+
+    /**
+     * Get the mode a ROM was packed with
+     *
+     * @param index Index
+     * @return Mode
+     */
+    public Chip8Mode getMode(int index) {
+        int mode = buffer.get(entry(index) + 22);
+        if (mode < 0 || mode >= Chip8Mode.values().length)
+            throw new IllegalStateException("Not a ROM library: unknown mode " + mode + " at index " + index);
+        return Chip8Mode.values()[mode];
+    }
+
+    /**
+     * Get the data of a ROM
+     *
+     * @param index Index
+     * @return Read-only slice of the mapped file
+     */
+    public ByteBuffer getData(int index) {
+        int entry = entry(index);
+        int offset = buffer.getInt(entry + 8);
+        int length = buffer.getInt(entry + 12);
+        check(offset, length);
+        ByteBuffer data = buffer.duplicate();
+        data.position(offset).limit(offset + length);
+        return data.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the shared image of a ROM
+     * The image is backed by the mapped file, the data is only copied into its memory pages
+     *
+     * @param index Index
+     * @return Rom image
+     */
+    public RomImage getImage(int index) {
+        return RomImage.of(getData(index), getHash(index));
+    }
+
+    /**
+     * Set the mode of the emulator and load a ROM
+     *
+     * @param chip8 Emulator, not running
+     * @param index Index
+     */
+    public void load(Chip8 chip8, int index) {
+        chip8.setMode(getMode(index));
+        chip8.loadROM(getImage(index));
+    }
+
+    /**
+     * Find a ROM by hash
+     *
+     * @param hash Rom hash
+     * @return Index, -1 when not found
+     */
+    public int indexOf(long hash) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long value = getHash(middle);
+            if (value < hash)
+                low = middle + 1;
+            else if (value > hash)
+                high = middle - 1;
+            else
+                return middle;
+        }
+        return -1;
+    }
+
+    /**
+     * Find a ROM by file name
+     * The name index is built on the first call
+     *
+     * @param name Name
+     * @return Index, -1 when not found
+     */
+    public synchronized int indexOf(String name) {
+        if (names == null) {
+            names = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++)
+                names.putIfAbsent(getName(i), i);
+        }
+        return names.getOrDefault(name, -1);
+    }
+
+    private int check(int offset, int length) {
+        if (offset < 0 || length < 0 || (long) offset + length > buffer.capacity())
+            throw new IllegalStateException("Not a ROM library: data out of range, " + offset + "+" + length);
+        return offset;
+    }
+
+    private int entry(int index) {
+        if (index < 0 || index >= count)
+            throw new IllegalArgumentException("No ROM at index " + index);
+        return HEADER_SIZE + index * ENTRY_SIZE;
+    }
+
+    /**
+     * Pack every ROM in the directory into a library file
+     *
+     * @param archive   Library file to write
+     * @param directory Directory of .ch8, .sc8 and .xo8 files
+     * @throws IOException On read or write failure
+     */
+    public static void pack(Path archive, Path directory) throws IOException {
+        List<Path> roms = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{ch8,sc8,xo8}")) {
+            stream.forEach(roms::add);
+        }
+        roms.sort(null);
+        pack(archive, roms);
+    }
+
+    /**
+     * Pack ROM files into a library file
+     * The mode follows the extension, .sc8 is SCHIP and .xo8 is XO-CHIP, other files are detected
+     *
+     * @param archive Library file to write
+     * @param roms    Rom files
+     * @throws IOException On read or write failure
+     */
+    public static void pack(Path archive, List<Path> roms) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path rom : roms) {
+            String name = rom.getFileName().toString();
+            byte[] data = Files.readAllBytes(rom);
+            Chip8Mode mode;
+            if (name.endsWith(".sc8"))
+                mode = Chip8Mode.SCHIP;
+            else if (name.endsWith(".xo8"))
+                mode = Chip8Mode.XOCHIP;
+            else
+                mode = detect(data);
+            entries.add(new Entry(name, data, mode));
+        }
+        entries.sort(Comparator.comparingLong((Entry entry) -> entry.hash).thenComparing(entry -> entry.name, Arrays::compare));
+
+        int namesSize = 0;
+        for (Entry entry : entries)
+            namesSize += entry.name.length;
+        ByteBuffer index = ByteBuffer.allocate(HEADER_SIZE + entries.size() * ENTRY_SIZE + namesSize);
+        index.putInt(MAGIC);
+        index.putShort((short) VERSION);
+        index.putShort((short) 0);
+        index.putInt(entries.size());
+        int nameOffset = HEADER_SIZE + entries.size() * ENTRY_SIZE;
+        long dataOffset = index.capacity();
+        List<byte[]> data = new ArrayList<>();
+        int offset = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry entry = entries.get(i);
+            Entry previous = i == 0 ? null : entries.get(i - 1);
+            if (previous == null || previous.hash != entry.hash || !Arrays.equals(previous.data, entry.data)) {
+                if (dataOffset + entry.data.length > Integer.MAX_VALUE)
+                    throw new IllegalStateException("ROM library too large");
+                offset = (int) dataOffset;
+                data.add(entry.data);
+                dataOffset += entry.data.length;
+            }
+            index.putLong(entry.hash);
+            index.putInt(offset);
+            index.putInt(entry.data.length);
+            index.putInt(nameOffset);
+            index.putShort((short) entry.name.length);
+            index.put((byte) entry.mode.ordinal());
+            index.put((byte) 0);
+            nameOffset += entry.name.length;
+        }
+        for (Entry entry : entries)
+            index.put(entry.name);
+        index.flip();
+
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (index.hasRemaining())
+                channel.write(index);
+            for (byte[] rom : data) {
+                ByteBuffer buffer = ByteBuffer.wrap(rom);
+                while (buffer.hasRemaining())
+                    channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Detect the mode a ROM needs
+     * ROMs larger than 4KB memory are XO-CHIP, others get the lowest mode that decodes all of their reachable code
+     *
+     * @param rom Rom data
+     * @return Mode
+     */
+    public static Chip8Mode detect(byte[] rom) {
+        if (rom.length > Chip8Mode.SCHIP.getMemorySize() - 512)
+            return Chip8Mode.XOCHIP;
+        RomAnalysis analysis = RomImage.of(rom).getAnalysis(Chip8Mode.XOCHIP);
+        CPU.ProcessorCode[] chip8 = CPU.ProcessorCode.getTable(Chip8Mode.CHIP8);
+        CPU.ProcessorCode[] schip = CPU.ProcessorCode.getTable(Chip8Mode.SCHIP);
+        Chip8Mode mode = Chip8Mode.CHIP8;
+        for (int i = 0; i + 1 < rom.length; i++) {
+            if (!analysis.isCode(512 + i))
+                continue;
+            int opcode = (rom[i] & 0xFF) << 8 | (rom[i + 1] & 0xFF);
+            if (schip[opcode] == null)
+                return Chip8Mode.XOCHIP;
+            if (chip8[opcode] == null)
+                mode = Chip8Mode.SCHIP;
+        }
+        return mode;
+    }
+
+    private static final class Entry {
+        private final byte[] name;
+        private final byte[] data;
+        private final long hash;
+        private final Chip8Mode mode;
+
+        private Entry(String name, byte[] data, Chip8Mode mode) {
+            this.name = name.getBytes(StandardCharsets.UTF_8);
+            this.data = data;
+            this.hash = RomImage.hash(ByteBuffer.wrap(data));
+            this.mode = mode;
+        }
+    }
+}
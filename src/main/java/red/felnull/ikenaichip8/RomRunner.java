@@ -0,0 +1,312 @@
+package red.felnull.ikenaichip8;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Headless runner for many ROM and input combinations
+ * Every ROM is run once per input log of the ROM, or once without input
+ * The input logs of Pong.ch8 are Pong.c8i and Pong@<variant>.c8i, the ROM part ends at the first @
+ * The mode follows the extension, .ch8 is CHIP8, .sc8 is SCHIP and .xo8 is XO-CHIP
+ * Each run stops after the frame limit or when the program jumps to itself (1NNN) or exits (00FD)
+ * A ROM or input log that can not be read only fails its own run, see Result.getError
+ *
+ * @author MORIMORI0317
+ */
+public class RomRunner {
+    private final int maxFrames;
+    private final int parallelism;
+    private int instructionsPerSecond = 500;
+    private boolean blockCache;
+
+    /**
+     * Runner using every processor
+     *
+     * @param maxFrames Frame limit of each run
+     */
+    public RomRunner(int maxFrames) {
+        this(maxFrames, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param maxFrames   Frame limit of each run
+     * @param parallelism Number of worker threads
+     */
+    public RomRunner(int maxFrames, int parallelism) {
+        this.maxFrames = maxFrames;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Set the instruction rate of each run
+     * Defalt is 500
+     *
+     * @param instructionsPerSecond Instructions per second
+     */
+    public void setInstructionsPerSecond(int instructionsPerSecond) {
+        this.instructionsPerSecond = instructionsPerSecond;
+    }
+
+    /**
+     * Set whether the runs use the block cache
+     * Defalt is false
+     *
+     * @param blockCache Whether to use block cache
+     */
+    public void setBlockCache(boolean blockCache) {
+        this.blockCache = blockCache;
+    }
+
+    /**
+     * Run every ROM in the directory
+     *
+     * @param romDirectory   Directory of .ch8, .sc8 and .xo8 files
+     * @param inputDirectory Directory of input logs (.c8i), or null
+     * @return Results in ROM name order
+     * @throws IOException On read failure
+     */
+    public List<Result> run(Path romDirectory, Path inputDirectory) throws IOException {
+        List<Path> roms = list(romDirectory, "*.{ch8,sc8,xo8}");
+        List<String> names = new ArrayList<>();
+        List<Chip8Mode> modes = new ArrayList<>();
+        for (Path rom : roms) {
+            String name = rom.getFileName().toString();
+            names.add(name);
+            modes.add(name.endsWith(".sc8") ? Chip8Mode.SCHIP : name.endsWith(".xo8") ? Chip8Mode.XOCHIP : Chip8Mode.CHIP8);
+        }
+        return run(names, modes, i -> RomImage.of(Files.readAllBytes(roms.get(i))), inputDirectory);
+    }
+
+    /**
+     * Run every ROM in the library with the mode it was packed with
+     * Each image is created by the job that runs it
+     *
+     * @param library        Rom library
+     * @param inputDirectory Directory of input logs (.c8i), or null
+     * @return Results in ROM name order
+     * @throws IOException On read failure
+     */
+    public List<Result> run(RomLibrary library, Path inputDirectory) throws IOException {
+        String[] libraryNames = new String[library.size()];
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < libraryNames.length; i++) {
+            libraryNames[i] = library.getName(i);
+            order.add(i);
+        }
+        order.sort(Comparator.comparing(i -> libraryNames[i]));
+        List<String> names = new ArrayList<>();
+        List<Chip8Mode> modes = new ArrayList<>();
+        for (int i : order) {
+            names.add(libraryNames[i]);
+            modes.add(library.getMode(i));
+        }
+        return run(names, modes, i -> library.getImage(order.get(i)), inputDirectory);
+    }
+
+    private List<Result> run(List<String> names, List<Chip8Mode> modes, ImageSource images, Path inputDirectory) throws IOException {
+        List<Path> inputs = inputDirectory == null ? new ArrayList<>() : list(inputDirectory, "*.c8i");
+        List<Callable<Result>> jobs = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            int index = i;
+            String name = names.get(i);
+            Chip8Mode mode = modes.get(i);
+            String stem = stem(name);
+            boolean matched = false;
+            for (Path input : inputs) {
+                if (romStem(input).equals(stem)) {
+                    jobs.add(() -> run(name, mode, images, index, input));
+                    matched = true;
+                }
+            }
+            if (!matched)
+                jobs.add(() -> run(name, mode, images, index, null));
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : pool.invokeAll(jobs))
+                results.add(future.get());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Result run(String rom, Chip8Mode mode, ImageSource images, int index, Path input) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(mode);
+        chip8.setBlockCache(blockCache);
+        chip8.setInstructionsPerSecond(instructionsPerSecond);
+
+        long start = System.nanoTime();
+        int frames = 0;
+        boolean halted = false;
+        String error = null;
+        try {
+            chip8.loadROM(images.get(index));
+            if (input != null) {
+                try (InputStream stream = Files.newInputStream(input)) {
+                    chip8.replay(InputLog.readFrom(stream));
+                }
+            } else {
+                chip8.setSeed(0);
+            }
+            chip8.init();
+            while (frames < maxFrames) {
+                chip8.runFrame();
+                frames++;
+                if (chip8.isHalted()) {
+                    halted = true;
+                    break;
+                }
+            }
+        } catch (Exception ex) {
+            error = ex.toString();
+        }
+        long nanos = System.nanoTime() - start;
+        long[] rows = new long[Display.MAX_WORDS];
+        int length = chip8.getFrame(rows);
+        return new Result(rom, input == null ? null : input.getFileName().toString(), frames, chip8.getCycles(), halted, hash(rows, length), nanos, error);
+    }
+
+    private static List<Path> list(Path directory, String glob) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    private static String romStem(Path input) {
+        String stem = stem(input.getFileName().toString());
+        int at = stem.indexOf('@');
+        return at < 0 ? stem : stem.substring(0, at);
+    }
+
+    private static String stem(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? name : name.substring(0, dot);
+    }
+
+    private static long hash(long[] rows, int length) {
+        long hash = 0xCBF29CE484222325L;
+        for (int j = 0; j < length; j++) {
+            long row = rows[j];
+            for (int i = 56; i >= 0; i -= 8) {
+                hash ^= (row >>> i) & 0xFF;
+                hash *= 0x100000001B3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Usage: RomRunner romDirectory|romLibrary [inputDirectory] [maxFrames]
+     * Prints one tab separated line per run
+     *
+     * @param args Arguments
+     * @throws IOException On read failure
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: RomRunner romDirectory|romLibrary [inputDirectory] [maxFrames]");
+            System.exit(2);
+        }
+        Path inputs = args.length > 1 && !args[1].equals("-") ? Paths.get(args[1]) : null;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 600;
+        long start = System.nanoTime();
+        Path roms = Paths.get(args[0]);
+        RomRunner runner = new RomRunner(frames);
+        List<Result> results = Files.isDirectory(roms) ? runner.run(roms, inputs) : runner.run(RomLibrary.open(roms), inputs);
+        System.out.println("rom\tinput\tframes\tcycles\thalted\thash\tmillis\terror");
+        results.forEach(System.out::println);
+        System.out.printf("%d runs in %.1f ms%n", results.size(), (System.nanoTime() - start) / 1e6);
+    }
+
+    private static interface ImageSource {
+        RomImage get(int index) throws IOException;
+    }
+
+    public static class Result {
+        private final String rom;
+        private final String input;
+        private final int frames;
+        private final long cycles;
+        private final boolean halted;
+        private final long hash;
+        private final long nanos;
+        private final String error;
+
+        private Result(String rom, String input, int frames, long cycles, boolean halted, long hash, long nanos, String error) {
+            this.rom = rom;
+            this.input = input;
+            this.frames = frames;
+            this.cycles = cycles;
+            this.halted = halted;
+            this.hash = hash;
+            this.nanos = nanos;
+            this.error = error;
+        }
+
+        public String getRom() {
+            return rom;
+        }
+
+        public String getInput() {
+            return input;
+        }
+
+        public int getFrames() {
+            return frames;
+        }
+
+        public long getCycles() {
+            return cycles;
+        }
+
+        public boolean isHalted() {
+            return halted;
+        }
+
+        /**
+         * Get the 64bit FNV-1a hash of the final framebuffer rows
+         *
+         * @return Framebuffer hash
+         */
+        public long getHash() {
+            return hash;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return rom + "\t" + (input == null ? "-" : input) + "\t" + frames + "\t" + cycles + "\t" + halted + "\t"
+                    + String.format("%016x", hash) + "\t" + String.format("%.3f", nanos / 1e6) + "\t" + (error == null ? "-" : error);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package red.felnull.ikenaichip8;
+
+/**
+ * XOR run length coding shared by FrameEncoder and Rewind
+ * The difference of two byte arrays is written as runs of varint equal bytes, varint literal bytes and the literals,
+ * each literal is the XOR of the two bytes
+ * A single equal byte between differing bytes is kept in the literals, it is cheaper than a new run
+ *
+ * @author MORIMORI0317
+ */
+final class RunLengthCodec {
+    private RunLengthCodec() {
+    }
+
+    /**
+     * Encode the difference of the arrays
+     * The output needs at most length * 2 + 10 bytes
+     *
+     * @param from   Old bytes, null for all zero
+     * @param to     New bytes
+     * @param length Number of bytes to compare
+     * @param out    Destination
+     * @param offset First destination index
+     * @return Destination index after the last run
+     */
+    static int encode(byte[] from, byte[] to, int length, byte[] out, int offset) {
+        int position = offset;
+        int i = 0;
+        while (i < length) {
+            int equalStart = i;
+            while (i < length && same(from, to, i))
+                i++;
+            if (i == length)
+                break;
+            int literalStart = i;
+            while (i < length && (!same(from, to, i) || (i + 1 < length && !same(from, to, i + 1))))
+                i++;
+            position = putVarInt(out, position, literalStart - equalStart);
+            position = putVarInt(out, position, i - literalStart);
+            for (int j = literalStart; j < i; j++)
+                out[position++] = (byte) (from == null ? to[j] : from[j] ^ to[j]);
+        }
+        return position;
+    }
+
+    /**
+     * Apply encoded runs to the array
+     * Turns the old bytes into the new ones and back again
+     *
+     * @param in     Encoded runs
+     * @param offset First run index
+     * @param end    Index after the last run
+     * @param data   Bytes to change
+     */
+    static void decode(byte[] in, int offset, int end, byte[] data) {
+        int read = offset;
+        int position = 0;
+        while (read < end) {
+            int equal = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = in[read++] & 0xFF;
+                equal |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            int literals = 0;
+            shift = 0;
+            do {
+                b = in[read++] & 0xFF;
+                literals |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            position += equal;
+            for (int i = 0; i < literals; i++)
+                data[position++] ^= in[read++];
+        }
+    }
+
+    private static boolean same(byte[] from, byte[] to, int index) {
+        return from == null ? to[index] == 0 : from[index] == to[index];
+    }
+
+    private static int putVarInt(byte[] out, int position, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[position++] = (byte) value;
+        return position;
+    }
+}
@@ -0,0 +1,104 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class BlockCacheTest {
+    private static Chip8 create(Chip8Mode mode, byte[] rom, boolean blockCache) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(mode);
+        chip8.setBlockCache(blockCache);
+        // One timer tick per 1000 instructions, so a whole block runs in one step
+        chip8.setInstructionsPerSecond(60000);
+        chip8.loadROM(rom);
+        chip8.init();
+        return chip8;
+    }
+
+    private static byte[] farWriteRom() {
+        StringBuilder rom = new StringBuilder();
+        for (int i = 0; i < 40; i++)
+            rom.append("F000 0000 ");
+        // 0x2A0: VA = 1, then call the routine that rewrites it to VA = 5
+        rom.append("6A01 2300 1200");
+        byte[] code = TestRoms.hex(rom.toString());
+        byte[] data = new byte[0x108];
+        System.arraycopy(code, 0, data, 0, code.length);
+        System.arraycopy(TestRoms.hex("A2A1 6005 F055 00EE"), 0, data, 0x100, 8);
+        return data;
+    }
+
+    @Test
+    void writeInsideABlockRecompilesIt() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8 chip8 = create(Chip8Mode.CHIP8, TestRoms.hex("6A01 A201 6007 F055 1200"), blockCache);
+            chip8.runCycles(5);
+            assertEquals(1, TestRoms.registers(chip8)[0xA]);
+            chip8.runCycles(1);
+            assertEquals(7, TestRoms.registers(chip8)[0xA]);
+        }
+    }
+
+    @Test
+    void writeFarIntoAnF000BlockRecompilesIt() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8 chip8 = create(Chip8Mode.XOCHIP, farWriteRom(), blockCache);
+            chip8.runCycles(42);
+            assertEquals(1, TestRoms.registers(chip8)[0xA]);
+            chip8.runCycles(5 + 41);
+            assertEquals(5, TestRoms.registers(chip8)[0xA]);
+        }
+    }
+
+    @Test
+    void blockAtTheEndOfMemory() {
+        Chip8 chip8 = create(Chip8Mode.XOCHIP, TestRoms.hex("1200"), true);
+        chip8.memory.write(0xFFFE, 0xF0);
+        chip8.memory.write(0xFFFF, 0x00);
+        BlockCache.Block block = chip8.blockCache.getBlock(0xFFFE);
+        assertSame(block, chip8.blockCache.getBlock(0xFFFE));
+        chip8.memory.write(0xFFFF, 0x00);
+        assertNotSame(block, chip8.blockCache.getBlock(0xFFFE));
+    }
+
+    @Test
+    void bcdWriteRecompilesTheBlock() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            // F033 writes 1, 0, 0 over the F000 operand and the high byte of 6AE0, which becomes 00E0
+            Chip8 chip8 = create(Chip8Mode.XOCHIP, TestRoms.hex("6A00 6064 F000 0206 6AE0 F033 1200"), blockCache);
+            chip8.runCycles(6);
+            assertEquals(0xE0, TestRoms.registers(chip8)[0xA] & 0xFF);
+            chip8.runCycles(4);
+            assertEquals(0, TestRoms.registers(chip8)[0xA]);
+            assertEquals(0x100, TestRoms.index(chip8));
+        }
+    }
+
+    @Test
+    void writeOutsideABlockKeepsIt() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, TestRoms.hex("6A01 6B02 1200"), true);
+        BlockCache.Block block = chip8.blockCache.getBlock(0x200);
+        chip8.memory.write(0x206, 0);
+        chip8.memory.store(0x300, new int[]{1, 2, 3}, 3);
+        assertSame(block, chip8.blockCache.getBlock(0x200));
+        chip8.memory.store(0x1FF, new int[]{0, 0x6A}, 2);
+        assertNotSame(block, chip8.blockCache.getBlock(0x200));
+    }
+
+    @Test
+    void blockCacheMatchesTheInterpreter() {
+        for (String name : TestRoms.BUNDLED) {
+            Chip8 interpreter = TestRoms.create(TestRoms.load(name), false, 3);
+            Chip8 cached = TestRoms.create(TestRoms.load(name), true, 3);
+            for (int i = 0; i < 300; i++) {
+                interpreter.runFrame();
+                cached.runFrame();
+            }
+            assertArrayEquals(TestRoms.snapshot(interpreter), TestRoms.snapshot(cached), name);
+        }
+    }
+}
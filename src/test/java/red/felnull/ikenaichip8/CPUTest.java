@@ -0,0 +1,84 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CPUTest {
+    private static final int DEFAULT_QUIRKS = Chip8Quirk.toMask(Chip8Quirk.defaults());
+
+    private static Chip8 xoChip(byte[] rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(Chip8Mode.XOCHIP);
+        chip8.loadROM(rom);
+        chip8.init();
+        return chip8;
+    }
+
+    @Test
+    void jumpAboveFourKilobytesIsNotAHalt() {
+        // V0 = FF, then BF35 jumps to 0x1034 where 1034 jumps down to 0x034
+        byte[] rom = new byte[0x1036 - 0x200];
+        System.arraycopy(TestRoms.hex("60FF BF35"), 0, rom, 0, 4);
+        rom[0x1034 - 0x200] = 0x10;
+        rom[0x1035 - 0x200] = 0x34;
+        Chip8 chip8 = xoChip(rom);
+        chip8.runCycles(2);
+        assertFalse(chip8.isHalted());
+    }
+
+    @Test
+    void jumpToItselfIsAHalt() {
+        Chip8 chip8 = xoChip(TestRoms.hex("6001 1202"));
+        chip8.runCycles(1);
+        assertTrue(chip8.isHalted());
+        chip8 = xoChip(TestRoms.hex("00FD"));
+        assertTrue(chip8.isHalted());
+    }
+
+    @Test
+    void decodeTableFindsEveryClass() {
+        CPU.ProcessorCode[] table = CPU.ProcessorCode.getTable(Chip8Mode.CHIP8, DEFAULT_QUIRKS);
+        int[] opcodes = {0x00E0, 0x00EE, 0x1ABC, 0x2ABC, 0x3A12, 0x4A12, 0x5AB0, 0x6A12, 0x7A12, 0x8AB0, 0x8AB1, 0x8AB2,
+                0x8AB3, 0x8AB4, 0x8AB5, 0x8AB6, 0x8AB7, 0x8ABE, 0x9AB0, 0xAABC, 0xBABC, 0xCA12, 0xDAB5, 0xEA9E, 0xEAA1,
+                0xFA07, 0xFA0A, 0xFA15, 0xFA18, 0xFA1E, 0xFA29, 0xFA33, 0xFA55, 0xFA65};
+        String[] names = {"_00E0", "_00EE", "_1NNN", "_2NNN", "_3XNN", "_4XNN", "_5XY0", "_6XNN", "_7XNN", "_8XY0", "_8XY1", "_8XY2",
+                "_8XY3", "_8XY4", "_8XY5", "_8XY6", "_8XY7", "_8XYE", "_9XY0", "_ANNN", "_BNNN", "_CXNN", "_DXYN", "_EX9E", "_EXA1",
+                "_FX07", "_FX0A", "_FX15", "_FX18", "_FX1E", "_FX29", "_FX33", "_FX55", "_FX65"};
+        for (int i = 0; i < opcodes.length; i++)
+            assertEquals(names[i], table[opcodes[i]].name(), Integer.toHexString(opcodes[i]));
+        for (int opcode : new int[]{0x0000, 0x5AB1, 0x8AB8, 0xEA00, 0xFA00, 0xFAFF})
+            assertNull(table[opcode], Integer.toHexString(opcode));
+    }
+
+    @Test
+    void decodeTableFollowsTheMode() {
+        assertNull(CPU.ProcessorCode.getTable(Chip8Mode.CHIP8)[0x00FF]);
+        assertSame(CPU.ProcessorCode._00FF, CPU.ProcessorCode.getTable(Chip8Mode.SCHIP)[0x00FF]);
+        assertNull(CPU.ProcessorCode.getTable(Chip8Mode.SCHIP)[0x5AB2]);
+        assertSame(CPU.ProcessorCode._5XY2, CPU.ProcessorCode.getTable(Chip8Mode.XOCHIP)[0x5AB2]);
+        assertSame(CPU.ProcessorCode._F000, CPU.ProcessorCode.getTable(Chip8Mode.XOCHIP)[0xF000]);
+    }
+
+    @Test
+    void decodeTableResolvesQuirks() {
+        CPU.ProcessorCode[] cosmac = CPU.ProcessorCode.getTable(Chip8Mode.CHIP8, Chip8Quirk.toMask(Chip8Quirk.cosmac()));
+        assertSame(CPU.ProcessorCode._8XY6_VY, cosmac[0x8AB6]);
+        assertSame(CPU.ProcessorCode._FX1E_NO_VF, cosmac[0xFA1E]);
+        assertSame(CPU.ProcessorCode._FX55, cosmac[0xFA55]);
+        assertSame(cosmac, CPU.ProcessorCode.getTable(Chip8Mode.CHIP8, Chip8Quirk.toMask(Chip8Quirk.cosmac())));
+        assertSame(CPU.ProcessorCode._BXNN, CPU.ProcessorCode.getTable(Chip8Mode.SCHIP, Chip8Quirk.toMask(Chip8Quirk.superChip()))[0xBABC]);
+    }
+
+    @Test
+    void invalidOpcodeKeepsTheMessage() {
+        Chip8 chip8 = TestRoms.create(TestRoms.hex("5121"), false, 0);
+        IllegalStateException ex = assertThrows(IllegalStateException.class, chip8::cycle);
+        assertEquals("Non existent processor code: 5121", ex.getMessage());
+    }
+}
@@ -0,0 +1,99 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Chip8AudioTest {
+    /**
+     * Sets the sound timer to 3 on the second instruction, then counts in V1 forever
+     */
+    private static final String BEEP = "6003 F018 7101 1204";
+
+    /**
+     * 600 instructions per second and 6000 samples per second, 10 samples per instruction
+     * The 750Hz square wave is 8 samples long, 4 high and 4 low
+     */
+    private static Chip8Audio run(boolean blockCache, int cycles) {
+        Chip8 chip8 = new Chip8();
+        chip8.setBlockCache(blockCache);
+        chip8.setInstructionsPerSecond(600);
+        chip8.loadROM(TestRoms.hex(BEEP));
+        chip8.init();
+        Chip8Audio audio = new Chip8Audio(6000);
+        audio.setFrequency(750);
+        chip8.setAudio(audio);
+        chip8.runCycles(cycles);
+        return audio;
+    }
+
+    private static void assertBeep(short[] samples, int amplitude) {
+        // On from instruction 1 until the third timer tick at instruction 30
+        for (int i = 0; i < 10; i++)
+            assertEquals(0, samples[i], "Sample " + i);
+        for (int i = 10; i < 300; i++)
+            assertEquals((i - 10) % 8 < 4 ? amplitude : -amplitude, samples[i], "Sample " + i);
+        for (int i = 300; i < samples.length; i++)
+            assertEquals(0, samples[i], "Sample " + i);
+    }
+
+    @Test
+    void soundTimerPlaysASquareWave() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8Audio audio = run(blockCache, 60);
+            assertEquals(600, audio.available());
+            short[] samples = new short[600];
+            audio.read(samples, 0, 600);
+            assertBeep(samples, 4096);
+            assertEquals(0, audio.available());
+        }
+    }
+
+    @Test
+    void readInParts() {
+        Chip8Audio audio = run(false, 60);
+        audio.setAmplitude(1000);
+        short[] samples = new short[600];
+        audio.read(samples, 0, 13);
+        assertEquals(587, audio.available());
+        audio.read(samples, 13, 287);
+        audio.read(samples, 300, 300);
+        assertBeep(samples, 1000);
+    }
+
+    @Test
+    void readIntoAByteBuffer() {
+        Chip8Audio audio = run(false, 60);
+        ByteBuffer buffer = ByteBuffer.allocate(1201).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(600, audio.read(buffer));
+        assertEquals(1200, buffer.position());
+        buffer.flip();
+        short[] samples = new short[600];
+        for (int i = 0; i < samples.length; i++)
+            samples[i] = buffer.getShort();
+        assertBeep(samples, 4096);
+    }
+
+    @Test
+    void readingAheadHoldsTheTone() {
+        Chip8Audio audio = run(false, 20);
+        assertEquals(200, audio.available());
+        short[] samples = new short[250];
+        audio.read(samples, 0, 250);
+        assertEquals(0, audio.available());
+        for (int i = 10; i < 250; i++)
+            assertEquals((i - 10) % 8 < 4 ? 4096 : -4096, samples[i], "Sample " + i);
+    }
+
+    @Test
+    void badArgumentsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Chip8Audio(0));
+        Chip8Audio audio = new Chip8Audio(44100);
+        assertThrows(IllegalArgumentException.class, () -> audio.setFrequency(0));
+        assertThrows(IllegalArgumentException.class, () -> audio.setAmplitude(32768));
+    }
+}
@@ -0,0 +1,65 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class Chip8BatchTest {
+    private static final int LANES = 5;
+    private static final int FRAMES = 200;
+
+    private static void assertLanesMatch(byte[] rom, int instructionsPerSecond, boolean byCycles) {
+        Chip8Batch batch = new Chip8Batch(RomImage.of(rom), LANES);
+        batch.setInstructionsPerSecond(instructionsPerSecond);
+        Chip8[] machines = new Chip8[LANES];
+        for (int lane = 0; lane < LANES; lane++) {
+            batch.setSeed(lane, 100 + lane);
+            machines[lane] = TestRoms.create(rom, lane % 2 == 0, 100 + lane);
+            machines[lane].setInstructionsPerSecond(instructionsPerSecond);
+        }
+        batch.reset();
+        batch.pressKey(3, 0);
+        machines[3].pressKey(0);
+
+        long[] expected = new long[Display.MAX_WORDS];
+        long[] actual = new long[Display.MAX_WORDS];
+        for (int frame = 0; frame < FRAMES; frame++) {
+            long executed = 0;
+            for (Chip8 chip8 : machines)
+                executed = chip8.runFrame();
+            if (byCycles) {
+                if (frame % 10 == 9)
+                    batch.runCycles(TestRoms.frameCycles(instructionsPerSecond, frame - 9, 10));
+            } else {
+                assertEquals(executed, batch.runFrame());
+            }
+            if (byCycles && frame % 10 != 9)
+                continue;
+            for (int lane = 0; lane < LANES; lane++) {
+                Chip8 chip8 = machines[lane];
+                assertFalse(batch.isFaulted(lane));
+                chip8.getFrame(expected);
+                batch.getFrame(lane, actual);
+                assertArrayEquals(expected, actual, "frame " + frame + " lane " + lane);
+                byte[] registers = TestRoms.registers(chip8);
+                for (int x = 0; x < 16; x++)
+                    assertEquals(registers[x] & 0xFF, batch.getRegister(lane, x), "frame " + frame + " lane " + lane + " V" + x);
+                assertEquals(TestRoms.pc(chip8), batch.getPc(lane));
+            }
+        }
+    }
+
+    @Test
+    void lanesMatchChip8() {
+        for (int instructionsPerSecond : new int[]{500, 600}) {
+            assertLanesMatch(TestRoms.timers(), instructionsPerSecond, false);
+            assertLanesMatch(TestRoms.timers(), instructionsPerSecond, true);
+            for (String name : TestRoms.BUNDLED) {
+                assertLanesMatch(TestRoms.load(name), instructionsPerSecond, false);
+                assertLanesMatch(TestRoms.load(name), instructionsPerSecond, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Chip8MetricsTest {
+    @Test
+    void countsExecutedInstructions() {
+        Chip8 chip8 = TestRoms.create(TestRoms.load("sprites.ch8"), true, 0);
+        chip8.setMetrics(true);
+        Chip8Metrics metrics = chip8.getMetrics();
+        Chip8Metrics.Sampler sampler = metrics.newSampler();
+        long executed = chip8.runCycles(1000);
+        assertEquals(executed, metrics.getInstructions());
+        assertEquals(metrics.getInstructions(), metrics.getOpcodeCounts().values().stream().mapToLong(Long::longValue).sum());
+        assertTrue(metrics.getDraws() > 0);
+        assertTrue(sampler.getInstructionsPerSecond() > 0);
+        assertEquals(0, sampler.getInstructionsPerSecond());
+    }
+
+    @Test
+    void schedulerSetsRateAndFrameTimes() throws InterruptedException {
+        Chip8 chip8 = new Chip8();
+        chip8.loadROM(TestRoms.load("alu.ch8"));
+        chip8.setMetrics(true);
+        chip8.setInstructionsPerSecond(1200);
+        CountDownLatch frames = new CountDownLatch(10);
+        chip8.addCycleListener(n -> frames.countDown());
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            scheduler.add(chip8);
+            assertTrue(frames.await(10, TimeUnit.SECONDS));
+        }
+        Chip8Metrics metrics = chip8.getMetrics();
+        assertEquals(1200, metrics.getRequestedInstructionsPerSecond());
+        long total = 0;
+        for (long count : metrics.getFrameTimeHistogram())
+            total += count;
+        assertTrue(total >= 10);
+    }
+}
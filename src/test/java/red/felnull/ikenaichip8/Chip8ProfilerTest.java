@@ -0,0 +1,105 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class Chip8ProfilerTest {
+    /**
+     * Calls 0x206, which calls 0x20C, then calls 0x20C directly, 9 instructions in total
+     */
+    private static final String CALLS = "2206 220C 1204 220C 6001 00EE 6102 00EE";
+
+    private static Chip8 create(Chip8Profiler profiler, boolean blockCache, String rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.setBlockCache(blockCache);
+        chip8.setProfiler(profiler);
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.init();
+        return chip8;
+    }
+
+    private static void run(Chip8Profiler profiler, boolean blockCache) {
+        create(profiler, blockCache, CALLS).runCycles(9);
+    }
+
+    private static String collapsed(Chip8Profiler profiler) {
+        StringBuilder out = new StringBuilder();
+        profiler.writeCollapsed(out);
+        return out.toString();
+    }
+
+    @Test
+    void everyInstructionSampled() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8Profiler profiler = new Chip8Profiler(1);
+            run(profiler, blockCache);
+            assertEquals("0x200;0x200 1\n"
+                    + "0x200;0x206;0x206 1\n"
+                    + "0x200;0x206;0x20c;0x20c 1\n"
+                    + "0x200;0x206;0x20c;0x20e 1\n"
+                    + "0x200;0x206;0x208 1\n"
+                    + "0x200;0x206;0x20a 1\n"
+                    + "0x200;0x202 1\n"
+                    + "0x200;0x20c;0x20c 1\n"
+                    + "0x200;0x20c;0x20e 1\n", collapsed(profiler));
+        }
+    }
+
+    @Test
+    void sampleInterval() {
+        Chip8Profiler profiler = new Chip8Profiler(3);
+        run(profiler, false);
+        assertEquals("0x200;0x206;0x20c;0x20c 1\n"
+                + "0x200;0x206;0x20a 1\n"
+                + "0x200;0x20c;0x20e 1\n", collapsed(profiler));
+    }
+
+    @Test
+    void samplesOfTheSameStackAdd() {
+        Chip8Profiler profiler = new Chip8Profiler(1);
+        create(profiler, false, "2204 1200 7001 00EE").runCycles(12);
+        assertEquals("0x200;0x200 3\n"
+                + "0x200;0x204;0x204 3\n"
+                + "0x200;0x204;0x206 3\n"
+                + "0x200;0x202 3\n", collapsed(profiler));
+    }
+
+    @Test
+    void countsPerAddress() {
+        Chip8Profiler profiler = new Chip8Profiler(1);
+        run(profiler, false);
+        assertEquals(1, profiler.getCount(0x200));
+        assertEquals(2, profiler.getCount(0x20C));
+        assertEquals(2, profiler.getCount(0x20E));
+        assertEquals(0, profiler.getCount(0x204));
+        long[] counts = new long[0x210];
+        profiler.getCounts(counts);
+        assertEquals(1, counts[0x208]);
+        assertEquals(9, Arrays.stream(counts).sum());
+
+        profiler.clear();
+        assertEquals(0, profiler.getCount(0x20C));
+        assertEquals("", collapsed(profiler));
+    }
+
+    @Test
+    void resetStartsAtTheTop() {
+        Chip8Profiler profiler = new Chip8Profiler(1);
+        Chip8 chip8 = create(profiler, false, CALLS);
+        // Two calls deep
+        chip8.runCycles(2);
+        chip8.reset();
+        chip8.runCycles(1);
+        assertEquals("0x200;0x200 2\n"
+                + "0x200;0x206;0x206 1\n", collapsed(profiler));
+    }
+
+    @Test
+    void intervalMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new Chip8Profiler(0));
+    }
+}
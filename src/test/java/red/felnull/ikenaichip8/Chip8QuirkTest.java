@@ -0,0 +1,76 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Chip8QuirkTest {
+    private static Chip8 run(String rom, Set<Chip8Quirk> quirks, boolean blockCache, int cycles) {
+        Chip8 chip8 = new Chip8();
+        chip8.setBlockCache(blockCache);
+        chip8.setQuirks(quirks);
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.init();
+        chip8.runCycles(cycles);
+        return chip8;
+    }
+
+    private static int register(Chip8 chip8, int x) {
+        return TestRoms.registers(chip8)[x] & 0xFF;
+    }
+
+    private static void assertEachQuirk(boolean blockCache) {
+        for (Chip8Quirk quirk : Chip8Quirk.values()) {
+            for (boolean on : new boolean[]{false, true}) {
+                EnumSet<Chip8Quirk> quirks = on ? EnumSet.of(quirk) : EnumSet.complementOf(EnumSet.of(quirk));
+                Chip8 chip8;
+                switch (quirk) {
+                    case SHIFT_VX:
+                        chip8 = run("6103 6281 8126 6A01 8A2E 120A", quirks, blockCache, 5);
+                        assertEquals(on ? 0x01 : 0x40, register(chip8, 1));
+                        assertEquals(0x02, register(chip8, 0xA));
+                        assertEquals(on ? 0 : 1, register(chip8, 0xF));
+                        break;
+                    case LOAD_STORE_INCREMENT:
+                        chip8 = run("A300 F255 F165 1206", quirks, blockCache, 3);
+                        assertEquals(on ? 0x305 : 0x300, TestRoms.index(chip8));
+                        break;
+                    case JUMP_VX:
+                        chip8 = run("6010 6130 B120", quirks, blockCache, 3);
+                        assertEquals(on ? 0x150 : 0x130, TestRoms.pc(chip8));
+                        break;
+                    case ADD_I_OVERFLOW:
+                        chip8 = run("6F05 6B02 AFFF FB1E 1208", quirks, blockCache, 4);
+                        assertEquals(0x1001, TestRoms.index(chip8));
+                        assertEquals(on ? 1 : 5, register(chip8, 0xF));
+                        break;
+                    case WRAP_SPRITES:
+                        chip8 = run("603E 611E 6200 F229 D015 120A", quirks, blockCache, 5);
+                        assertEquals(on, chip8.getGraphic(0, 30));
+                        assertEquals(on, chip8.getGraphic(1, 0));
+                        assertTrue(chip8.getGraphic(62, 30));
+                        break;
+                    default:
+                        throw new IllegalStateException("Untested quirk: " + quirk);
+                }
+            }
+        }
+    }
+
+    @Test
+    void eachQuirk() {
+        assertEachQuirk(false);
+        assertEachQuirk(true);
+    }
+
+    @Test
+    void maskRoundTrip() {
+        for (EnumSet<Chip8Quirk> quirks : Arrays.asList(Chip8Quirk.defaults(), Chip8Quirk.cosmac(), Chip8Quirk.superChip(), Chip8Quirk.xoChip(), EnumSet.noneOf(Chip8Quirk.class), EnumSet.allOf(Chip8Quirk.class)))
+            assertEquals(quirks, Chip8Quirk.fromMask(Chip8Quirk.toMask(quirks)));
+    }
+}
@@ -0,0 +1,141 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Chip8SchedulerTest {
+    private static final long TIMEOUT_MILLIS = 5000;
+    private final AtomicInteger frames = new AtomicInteger();
+
+    private Chip8 create(String rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.addCycleListener(c -> frames.incrementAndGet());
+        return chip8;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long end = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < end, "Timed out");
+            Thread.sleep(5);
+        }
+    }
+
+    private void awaitFrames(int count) throws InterruptedException {
+        int target = frames.get() + count;
+        await(() -> frames.get() >= target);
+    }
+
+    private void assertNoFrames() throws InterruptedException {
+        int count = frames.get();
+        Thread.sleep(100);
+        assertEquals(count, frames.get());
+    }
+
+    @Test
+    void addRunsAndRemoveStops() throws InterruptedException {
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            Chip8 chip8 = create("7001 1200");
+            scheduler.add(chip8);
+            assertEquals(1, scheduler.size());
+            assertTrue(chip8.isRun());
+            assertThrows(IllegalStateException.class, () -> scheduler.add(chip8));
+            awaitFrames(3);
+
+            scheduler.remove(chip8);
+            assertEquals(0, scheduler.size());
+            assertFalse(chip8.isRun());
+            assertNoFrames();
+        }
+    }
+
+    @Test
+    void stopRemovesTheEmulator() throws InterruptedException {
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            Chip8 chip8 = create("7001 1200");
+            scheduler.add(chip8);
+            awaitFrames(1);
+            chip8.stop();
+            assertEquals(0, scheduler.size());
+            assertNoFrames();
+        }
+    }
+
+    @Test
+    void pauseStopsTheFrames() throws InterruptedException {
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            Chip8 chip8 = create("7001 1200");
+            chip8.pause();
+            scheduler.add(chip8);
+            assertNoFrames();
+
+            chip8.unpause();
+            awaitFrames(3);
+            chip8.pause();
+            assertNoFrames();
+            assertEquals(1, scheduler.size());
+
+            chip8.unpause();
+            awaitFrames(3);
+        }
+    }
+
+    @Test
+    void waitingForAKeyParks() throws InterruptedException {
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            Chip8 chip8 = create("F00A 1202");
+            scheduler.add(chip8);
+            await(chip8::isParked);
+            assertNoFrames();
+
+            chip8.pressKey(5);
+            awaitFrames(1);
+            // Halted on 1202 with no timers running, parks with the key still pressed
+            await(chip8::isParked);
+            assertNoFrames();
+            assertEquals(5, TestRoms.registers(chip8)[0]);
+            // Any key event wakes it, it parks again on the next frame
+            chip8.releaseKey(5);
+            awaitFrames(1);
+            await(chip8::isParked);
+        }
+    }
+
+    @Test
+    void resetWakesAHaltedEmulator() throws InterruptedException {
+        try (Chip8Scheduler scheduler = new Chip8Scheduler(1)) {
+            Chip8 chip8 = create("6001 1202");
+            scheduler.add(chip8);
+            await(chip8::isParked);
+            assertNoFrames();
+
+            chip8.reset();
+            awaitFrames(1);
+            await(chip8::isParked);
+            assertEquals(1, TestRoms.registers(chip8)[0]);
+        }
+    }
+
+    @Test
+    void closeRemovesEveryEmulator() throws InterruptedException {
+        Chip8 first = create("7001 1200");
+        Chip8 second = create("7001 1200");
+        Chip8Scheduler scheduler = new Chip8Scheduler(2);
+        scheduler.add(first);
+        scheduler.add(second);
+        awaitFrames(2);
+        scheduler.close();
+        assertEquals(0, scheduler.size());
+        assertFalse(first.isRun());
+        assertFalse(second.isRun());
+        assertNoFrames();
+    }
+}
@@ -0,0 +1,101 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Chip8ThreadTest {
+    /**
+     * XORs a 8*15 block at 0, 0 in one instruction forever, rows 0 to 14 are always all drawn or all not drawn
+     */
+    private static final String TOGGLE = "A206 D00F 1202 FFFF FFFF FFFF FFFF FFFF FFFF FFFF FF00";
+
+    private static void assertWhole(long[] rows, int length) {
+        assertEquals(32, length);
+        for (int y = 1; y < 15; y++)
+            assertEquals(rows[0], rows[y], "Torn frame");
+        assertTrue(rows[0] == 0 || rows[0] == 0xFFL << 56);
+        for (int y = 15; y < 32; y++)
+            assertEquals(0, rows[y]);
+    }
+
+    @Test
+    void publishedFramesAreNeverTorn() throws InterruptedException {
+        Chip8 chip8 = new Chip8();
+        chip8.loadROM(TestRoms.hex(TOGGLE));
+        chip8.init();
+        Thread writer = new Thread(() -> {
+            // Every cycle publishes a frame
+            while (!Thread.currentThread().isInterrupted())
+                chip8.runCycles(1);
+        });
+        writer.start();
+        try {
+            long[] rows = new long[Display.MAX_WORDS];
+            ByteBuffer bytes = ByteBuffer.allocate(Display.MAX_WORDS * 8);
+            int[] pixels = new int[64 * 32];
+            boolean drawn = false;
+            boolean cleared = false;
+            for (int i = 0; i < 20000; i++) {
+                assertWhole(rows, chip8.getFrame(rows));
+                drawn |= rows[0] != 0;
+                cleared |= rows[0] == 0;
+
+                bytes.clear();
+                int length = chip8.getFrame(bytes) / 8;
+                bytes.flip();
+                for (int j = 0; j < length; j++)
+                    rows[j] = bytes.getLong();
+                assertWhole(rows, length);
+
+                chip8.getFrame(pixels, 0, 64, 1, 0, 1);
+                for (int y = 1; y < 15; y++) {
+                    for (int x = 0; x < 8; x++)
+                        assertEquals(pixels[x], pixels[y * 64 + x], "Torn frame");
+                }
+            }
+            assertTrue(drawn);
+            assertTrue(cleared);
+        } finally {
+            writer.interrupt();
+            writer.join();
+        }
+    }
+
+    @Test
+    void concurrentKeyEventsAreNotLost() throws InterruptedException {
+        Chip8 chip8 = new Chip8();
+        chip8.loadROM(TestRoms.hex("F00A 1200"));
+        chip8.setThrottle(false);
+        Thread runner = new Thread(chip8::runTurbo);
+        runner.start();
+        List<Thread> threads = new ArrayList<>();
+        try {
+            for (int key = 0; key < 16; key++) {
+                int num = key;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < 10000; i++) {
+                        chip8.pressKey(num);
+                        chip8.releaseKey(num);
+                    }
+                    if (num % 2 == 0)
+                        chip8.pressKey(num);
+                });
+                threads.add(thread);
+                thread.start();
+            }
+            for (Thread thread : threads)
+                thread.join();
+        } finally {
+            chip8.stop();
+            runner.join();
+        }
+        for (int key = 0; key < 16; key++)
+            assertEquals(key % 2 == 0, chip8.isKeyPressed(key), "Key " + key);
+    }
+}
@@ -0,0 +1,126 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Chip8TimingTest {
+    /**
+     * Sets the delay timer to 60, polls it until it is 0 and halts at 0x20A
+     */
+    private static final String WAIT_ONE_SECOND = "603C F015 F107 3100 1204 120A";
+
+    private static void assertBatchMatchesFrames(byte[] rom, boolean blockCache, int instructionsPerSecond) {
+        Chip8 frames = TestRoms.create(rom, blockCache, 42);
+        Chip8 batch = TestRoms.create(rom, blockCache, 42);
+        frames.setInstructionsPerSecond(instructionsPerSecond);
+        batch.setInstructionsPerSecond(instructionsPerSecond);
+        long executed = 0;
+        for (int i = 0; i < 120; i++)
+            executed += frames.runFrame();
+        assertEquals(executed, batch.runCycles(executed));
+        assertArrayEquals(TestRoms.snapshot(frames), TestRoms.snapshot(batch));
+    }
+
+    @Test
+    void runCyclesMatchesRunFrame() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            for (int instructionsPerSecond : new int[]{500, 600, 1000}) {
+                assertBatchMatchesFrames(TestRoms.timers(), blockCache, instructionsPerSecond);
+                for (String name : TestRoms.BUNDLED)
+                    assertBatchMatchesFrames(TestRoms.load(name), blockCache, instructionsPerSecond);
+            }
+        }
+    }
+
+    @Test
+    void timersTickInsideBatch() {
+        Chip8 chip8 = TestRoms.create(TestRoms.timers(), true, 42);
+        chip8.setInstructionsPerSecond(600);
+        chip8.runCycles(56);
+        assertFalse(TestRoms.isDrawn(chip8, 0, 0, 8, 5));
+        chip8.runCycles(1);
+        assertTrue(TestRoms.isDrawn(chip8, 0, 0, 8, 5));
+    }
+
+    @Test
+    void idleSkipStopsAtTick() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8 chip8 = TestRoms.create(TestRoms.timers(), blockCache, 42);
+            chip8.setInstructionsPerSecond(6000);
+            chip8.runCycles(506);
+            assertFalse(TestRoms.isDrawn(chip8, 0, 0, 8, 5));
+            chip8.runCycles(1);
+            assertTrue(TestRoms.isDrawn(chip8, 0, 0, 8, 5));
+        }
+    }
+
+    @Test
+    void idleSkipMatchesExecution() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8 skipped = TestRoms.create(TestRoms.timers(), blockCache, 42);
+            Chip8 executed = TestRoms.create(TestRoms.timers(), blockCache, 42);
+            for (int i = 0; i < 120; i++) {
+                long cycles = skipped.runFrame();
+                for (long j = 0; j < cycles; j++)
+                    executed.runCycles(1);
+                assertArrayEquals(TestRoms.snapshot(skipped), TestRoms.snapshot(executed));
+            }
+        }
+    }
+
+    @Test
+    void timersFollowTheVirtualClock() {
+        for (int instructionsPerSecond : new int[]{300, 600, 6000, 100000}) {
+            Chip8 chip8 = TestRoms.create(TestRoms.hex(WAIT_ONE_SECOND), false, 0);
+            chip8.setInstructionsPerSecond(instructionsPerSecond);
+            int frames = 0;
+            while (!chip8.isHalted() && frames < 1000) {
+                chip8.runFrame();
+                frames++;
+            }
+            assertEquals(61, frames, "at " + instructionsPerSecond);
+        }
+    }
+
+    @Test
+    void cycleTicksTimersEveryInstruction() {
+        Chip8 chip8 = TestRoms.create(TestRoms.hex(WAIT_ONE_SECOND), false, 0);
+        int cycles = 0;
+        while (!chip8.isHalted() && cycles < 1000) {
+            chip8.cycle();
+            cycles++;
+        }
+        assertTrue(cycles < 100, "cycles " + cycles);
+    }
+
+    @Test
+    void turboRunsUnthrottled() throws InterruptedException {
+        Chip8 chip8 = TestRoms.create(TestRoms.hex("7001 1200"), false, 0);
+        chip8.setThrottle(false);
+        Thread thread = new Thread(chip8::runTurbo);
+        thread.start();
+        Thread.sleep(200);
+        chip8.stop();
+        thread.join();
+        assertTrue(chip8.getCycles() > 100000, "cycles " + chip8.getCycles());
+    }
+
+    @Test
+    void turboThrottlesToTheRate() throws InterruptedException {
+        Chip8 chip8 = TestRoms.create(TestRoms.hex("7001 1200"), false, 0);
+        chip8.setInstructionsPerSecond(600);
+        Thread thread = new Thread(chip8::runTurbo);
+        long start = System.nanoTime();
+        thread.start();
+        Thread.sleep(300);
+        chip8.stop();
+        thread.join();
+        long limit = (System.nanoTime() - start) * 600 / 1000000000L + 2 * 10;
+        assertTrue(chip8.getCycles() <= limit, "cycles " + chip8.getCycles() + " limit " + limit);
+        assertTrue(chip8.getCycles() >= 10, "cycles " + chip8.getCycles());
+    }
+}
@@ -0,0 +1,93 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DirtyRegionTest {
+    private final List<long[]> regions = new ArrayList<>();
+
+    private Chip8 create(Chip8Mode mode, Set<Chip8Quirk> quirks, String rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(mode);
+        chip8.setQuirks(quirks);
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.init();
+        chip8.addDisplayListener((c, region) -> regions.add(new long[]{region.getRows(), region.getX(), region.getY(), region.getWidth(), region.getHeight()}));
+        return chip8;
+    }
+
+    /**
+     * Run and get the only region notified
+     */
+    private long[] run(Chip8 chip8, int cycles) {
+        regions.clear();
+        chip8.runCycles(cycles);
+        assertEquals(1, regions.size());
+        return regions.get(0);
+    }
+
+    private static long[] region(long rows, int x, int y, int width, int height) {
+        return new long[]{rows, x, y, width, height};
+    }
+
+    @Test
+    void clearMarksTheWholeDisplay() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, Chip8Quirk.defaults(), "00E0 1202");
+        assertArrayEquals(region(0xFFFFFFFFL, 0, 0, 64, 32), run(chip8, 1));
+
+        chip8 = create(Chip8Mode.SCHIP, Chip8Quirk.defaults(), "00FF 00E0 1204");
+        run(chip8, 1);
+        assertArrayEquals(region(-1L, 0, 0, 128, 64), run(chip8, 1));
+    }
+
+    @Test
+    void spriteMarksItsBoundingBox() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, Chip8Quirk.defaults(), "00E0 6000 F029 610A 6205 D125 120C");
+        run(chip8, 1);
+        assertArrayEquals(region(0x1FL << 5, 10, 5, 8, 5), run(chip8, 5));
+
+        regions.clear();
+        chip8.runCycles(10);
+        assertEquals(0, regions.size());
+    }
+
+    @Test
+    void spritesInOneRunAreMerged() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, Chip8Quirk.defaults(), "00E0 6000 F029 6102 6203 D125 6128 6214 D125 1212");
+        run(chip8, 1);
+        assertArrayEquals(region(0x1FL << 3 | 0x1FL << 20, 2, 3, 40 + 8 - 2, 20 + 5 - 3), run(chip8, 8));
+    }
+
+    @Test
+    void clippedSpriteStopsAtTheEdge() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, Chip8Quirk.defaults(), "00E0 6000 F029 613C 621E D125 120C");
+        run(chip8, 1);
+        assertArrayEquals(region(3L << 30, 60, 30, 4, 2), run(chip8, 5));
+    }
+
+    @Test
+    void wrappedSpriteMarksTheWholeDisplay() {
+        Chip8 chip8 = create(Chip8Mode.CHIP8, EnumSet.of(Chip8Quirk.WRAP_SPRITES), "00E0 6000 F029 613C 621E D125 120C");
+        run(chip8, 1);
+        assertArrayEquals(region(0xFFFFFFFFL, 0, 0, 64, 32), run(chip8, 5));
+
+        chip8 = create(Chip8Mode.CHIP8, EnumSet.of(Chip8Quirk.WRAP_SPRITES), "00E0 6000 F029 610A 6205 D125 120C");
+        run(chip8, 1);
+        assertArrayEquals(region(0x1FL << 5, 10, 5, 8, 5), run(chip8, 5));
+    }
+
+    @Test
+    void bigSpriteInHiRes() {
+        Chip8 chip8 = create(Chip8Mode.SCHIP, Chip8Quirk.defaults(), "00FF 6000 F030 6178 623A D120 120C");
+        run(chip8, 1);
+        // 16*16 at 120, 58 is clipped to 8*6
+        assertArrayEquals(region(0x3FL << 58, 120, 58, 8, 6), run(chip8, 5));
+    }
+}
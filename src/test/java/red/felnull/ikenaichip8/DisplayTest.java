@@ -0,0 +1,113 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DisplayTest {
+    private static Chip8 create(Chip8Mode mode, String rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(mode);
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.init();
+        return chip8;
+    }
+
+    private static long[] frame(Chip8 chip8) {
+        long[] rows = new long[Display.MAX_WORDS];
+        chip8.getFrame(rows);
+        return rows;
+    }
+
+    @Test
+    void fontGlyphIsDrawn() {
+        // Glyph 0 is F0 90 90 90 F0, drawn at 10, 5
+        Chip8 chip8 = create(Chip8Mode.CHIP8, "6000 F029 610A 6205 D125 120A");
+        chip8.runCycles(5);
+        long[] rows = frame(chip8);
+        assertEquals(0, rows[4]);
+        assertEquals(0xFL << 50, rows[5]);
+        assertEquals(0x9L << 50, rows[6]);
+        assertEquals(0x9L << 50, rows[8]);
+        assertEquals(0xFL << 50, rows[9]);
+        assertEquals(0, rows[10]);
+        assertTrue(chip8.getGraphic(10, 5));
+        assertFalse(chip8.getGraphic(11, 6));
+        assertTrue(chip8.getGraphic(13, 7));
+        assertEquals(0, TestRoms.registers(chip8)[0xF]);
+    }
+
+    @Test
+    void drawIsXorWithCollision() {
+        // Glyph 0 at 0, 0, then again at 2, 0, then again at 2, 0
+        Chip8 chip8 = create(Chip8Mode.CHIP8, "6000 F029 6102 D005 D105 D105 120C");
+        chip8.runCycles(4);
+        assertEquals(0, TestRoms.registers(chip8)[0xF]);
+        chip8.runCycles(1);
+        assertEquals(1, TestRoms.registers(chip8)[0xF]);
+        long[] rows = frame(chip8);
+        assertEquals(0xCCL << 56, rows[0]);
+        assertEquals(0xB4L << 56, rows[1]);
+        chip8.runCycles(1);
+        assertEquals(1, TestRoms.registers(chip8)[0xF]);
+        rows = frame(chip8);
+        assertEquals(0xF0L << 56, rows[0]);
+        assertEquals(0x90L << 56, rows[1]);
+    }
+
+    @Test
+    void spriteCrossesTheWordBoundary() {
+        Chip8 chip8 = create(Chip8Mode.SCHIP, "00FF A20C 613C 6201 D121 120A FF00");
+        chip8.runCycles(5);
+        long[] rows = frame(chip8);
+        assertEquals(0, rows[0]);
+        assertEquals(0, rows[1]);
+        assertEquals(0xFL, rows[2]);
+        assertEquals(0xFL << 60, rows[3]);
+        assertFalse(chip8.getGraphic(59, 1));
+        assertTrue(chip8.getGraphic(60, 1));
+        assertTrue(chip8.getGraphic(67, 1));
+        assertFalse(chip8.getGraphic(68, 1));
+    }
+
+    @Test
+    void spriteIsClippedAtTheEdges() {
+        // FF at 60, 31 with a height of 2, only 60 to 63 of the last row are drawn
+        Chip8 chip8 = create(Chip8Mode.CHIP8, "A20C 603C 611F D012 120A 0000 FFFF");
+        chip8.runCycles(4);
+        long[] rows = frame(chip8);
+        assertEquals(0xFL, rows[31]);
+        assertEquals(0, rows[0]);
+        assertFalse(chip8.getGraphic(0, 31));
+        assertFalse(chip8.getGraphic(60, 0));
+    }
+
+    @Test
+    void startPositionWraps() {
+        // 0x42, 0x23 is 2, 3 on the 64*32 display
+        Chip8 chip8 = create(Chip8Mode.CHIP8, "6000 F029 6142 6223 D125 120A");
+        chip8.runCycles(5);
+        assertTrue(chip8.getGraphic(2, 3));
+        assertTrue(chip8.getGraphic(5, 7));
+        assertFalse(chip8.getGraphic(1, 3));
+    }
+
+    @Test
+    void setGraphicWhileStopped() {
+        Chip8 chip8 = create(Chip8Mode.SCHIP, "00FF 1202");
+        chip8.runCycles(1);
+        chip8.setGraphic(3, 4, true);
+        chip8.setGraphic(100, 63, true);
+        assertTrue(chip8.getGraphic(3, 4));
+        assertTrue(chip8.getGraphic(100, 63));
+        long[] rows = frame(chip8);
+        assertEquals(1L << 60, rows[4 * 2]);
+        assertEquals(1L << 27, rows[63 * 2 + 1]);
+
+        chip8.setGraphic(3, 4, false);
+        assertFalse(chip8.getGraphic(3, 4));
+        assertEquals(0, frame(chip8)[4 * 2]);
+    }
+}
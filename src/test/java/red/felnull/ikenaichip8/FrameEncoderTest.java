@@ -0,0 +1,93 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+import red.felnull.ikenaichip8test.FrameDecoder;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FrameEncoderTest {
+    private static void assertDecoded(Chip8 chip8, FrameDecoder decoder) {
+        long[] expected = new long[Display.MAX_WORDS];
+        long[] actual = new long[Display.MAX_WORDS];
+        int length = chip8.getFrame(expected);
+        assertEquals(length, decoder.getFrame(actual));
+        assertArrayEquals(expected, actual);
+        assertEquals(chip8.getWidth(), decoder.getWidth());
+        assertEquals(chip8.getHeight(), decoder.getHeight());
+        assertEquals(chip8.getPlanes(), decoder.getPlanes());
+    }
+
+    @Test
+    void packetsDecodeToTheFrame() {
+        for (String name : TestRoms.BUNDLED) {
+            Chip8 chip8 = TestRoms.create(TestRoms.load(name), true, 0);
+            FrameDecoder decoder = new FrameDecoder();
+            chip8.addGFXListener(new FrameEncoder(30, packet -> assertTrue(decoder.decode(packet))));
+            for (int i = 0; i < 300; i++) {
+                chip8.runFrame();
+                assertDecoded(chip8, decoder);
+            }
+        }
+    }
+
+    @Test
+    void samplePacketSize() {
+        Chip8 chip8 = TestRoms.create(TestRoms.load("digits.ch8"), true, 0);
+        long[] total = new long[2];
+        chip8.addGFXListener(new FrameEncoder(60, packet -> {
+            total[0] += packet.remaining();
+            total[1]++;
+        }));
+        for (int i = 0; i < 600; i++)
+            chip8.runFrame();
+        double average = (double) total[0] / total[1];
+        assertTrue(average < 32, "Average packet " + average + " bytes");
+    }
+
+    @Test
+    void lostPacketWaitsForKeyframe() {
+        Chip8 chip8 = TestRoms.create(TestRoms.load("sprites.ch8"), true, 0);
+        FrameEncoder encoder = new FrameEncoder(1000, null);
+        FrameDecoder decoder = new FrameDecoder();
+        chip8.addGFXListener(encoder);
+        chip8.runFrame();
+        assertTrue(decoder.decode(encoder.getPacket()));
+        chip8.runFrame();
+        chip8.runFrame();
+        assertFalse(decoder.decode(encoder.getPacket()));
+        chip8.runFrame();
+        assertFalse(decoder.decode(encoder.getPacket()));
+        encoder.requestKeyframe();
+        chip8.runFrame();
+        ByteBuffer packet = encoder.getPacket();
+        assertEquals(FrameEncoder.KEYFRAME, packet.get(0));
+        assertTrue(decoder.decode(packet));
+        assertDecoded(chip8, decoder);
+    }
+
+    @Test
+    void formatChangeSendsKeyframe() {
+        FrameEncoder encoder = new FrameEncoder(1000, null);
+        FrameDecoder decoder = new FrameDecoder();
+        long[] frame = new long[Display.MAX_WORDS];
+        long[] decoded = new long[Display.MAX_WORDS];
+        frame[3] = 0xF0F0L;
+        assertTrue(decoder.decode(encoder.encode(frame, 64, 32, 1)));
+        ByteBuffer packet = encoder.encode(frame, 64, 32, 1);
+        assertEquals(FrameEncoder.DELTA, packet.get(0));
+        assertTrue(decoder.decode(packet));
+
+        frame[Display.MAX_WORDS - 1] = -1L;
+        packet = encoder.encode(frame, 128, 64, 2);
+        assertEquals(FrameEncoder.KEYFRAME, packet.get(0));
+        assertTrue(decoder.decode(packet));
+        assertEquals(Display.MAX_WORDS, decoder.getFrame(decoded));
+        assertArrayEquals(frame, decoded);
+        assertTrue(decoder.getGraphic(127, 63));
+    }
+}
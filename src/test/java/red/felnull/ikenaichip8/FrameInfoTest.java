@@ -0,0 +1,75 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FrameInfoTest {
+    private static Chip8 create(String rom) {
+        Chip8 chip8 = new Chip8();
+        chip8.setMode(Chip8Mode.SCHIP);
+        chip8.loadROM(TestRoms.hex(rom));
+        chip8.init();
+        return chip8;
+    }
+
+    @Test
+    void infoMatchesTheCopiedFrame() {
+        Chip8 chip8 = create("00FF 1202");
+        chip8.runFrame();
+        FrameInfo info = new FrameInfo();
+        assertEquals(128, chip8.getFrame(new long[Display.MAX_WORDS], info));
+        assertEquals(128, info.getWidth());
+        assertEquals(64, info.getHeight());
+        assertEquals(1, info.getPlanes());
+        assertEquals(128, info.getLength());
+
+        chip8 = create("00FE 1202");
+        chip8.runFrame();
+        assertEquals(32 * 8, chip8.getFrame(ByteBuffer.allocate(Display.MAX_WORDS * 8), info));
+        assertEquals(64, info.getWidth());
+        assertEquals(32, info.getHeight());
+        assertEquals(32, info.getLength());
+    }
+
+    @Test
+    void smallDestinationThrows() {
+        Chip8 chip8 = create("00FF 1202");
+        chip8.runFrame();
+        FrameInfo info = new FrameInfo();
+        assertThrows(IllegalArgumentException.class, () -> chip8.getFrame(new long[32], info));
+        LongBuffer rows = LongBuffer.allocate(40);
+        rows.position(8);
+        assertThrows(IllegalArgumentException.class, () -> chip8.getFrame(rows));
+        assertEquals(8, rows.position());
+        ByteBuffer bytes = ByteBuffer.allocate(256);
+        assertThrows(IllegalArgumentException.class, () -> chip8.getFrame(bytes));
+        assertEquals(0, bytes.position());
+        assertThrows(IllegalArgumentException.class, () -> chip8.getFrame(new int[64 * 32], 0, 64, 1, 0, 1));
+    }
+
+    @Test
+    void infoIsConsistentWhileRunning() throws InterruptedException {
+        Chip8 chip8 = create("00FF 00FE 1200");
+        chip8.setThrottle(false);
+        Thread thread = new Thread(chip8::runTurbo);
+        thread.start();
+        try {
+            FrameInfo info = new FrameInfo();
+            long[] rows = new long[Display.MAX_WORDS];
+            for (int i = 0; i < 100000; i++) {
+                int length = chip8.getFrame(rows, info);
+                assertEquals(info.getLength(), length);
+                assertEquals(info.getWidth() / 2, info.getHeight());
+                assertEquals(info.getWidth() == 128 ? 128 : 32, length);
+            }
+        } finally {
+            chip8.stop();
+            thread.join();
+        }
+    }
+}
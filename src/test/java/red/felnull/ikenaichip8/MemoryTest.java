@@ -0,0 +1,84 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MemoryTest {
+    /**
+     * Stores V0 to V3 at 0x300, in the page after the code
+     */
+    private static final String STORE = "A300 6011 6122 6233 6344 F355 120C";
+
+    private static Chip8 create(RomImage image) {
+        Chip8 chip8 = new Chip8();
+        chip8.loadROM(image);
+        chip8.init();
+        return chip8;
+    }
+
+    @Test
+    void pagesStaySharedUntilWritten() {
+        RomImage image = RomImage.of(TestRoms.hex(STORE));
+        Chip8 chip8 = create(image);
+        for (int address = 0; address < chip8.memory.size(); address += Memory.PAGE_SIZE)
+            assertTrue(chip8.memory.isShared(address));
+
+        chip8.runCycles(6);
+        assertFalse(chip8.memory.isShared(0x300));
+        assertTrue(chip8.memory.isShared(0x200));
+        assertTrue(chip8.memory.isShared(0x400));
+        assertEquals(0x11, chip8.memory.read(0x300));
+        assertEquals(0x44, chip8.memory.read(0x303));
+        assertEquals(0, chip8.memory.read(0x304));
+    }
+
+    @Test
+    void writesAreNotSeenByOtherEmulators() {
+        RomImage image = RomImage.of(TestRoms.hex(STORE));
+        Chip8 writer = create(image);
+        Chip8 reader = create(image);
+        writer.runCycles(6);
+        writer.memory.write(0x200, 0x12);
+
+        assertTrue(reader.memory.isShared(0x300));
+        assertEquals(0, reader.memory.read(0x300));
+        assertEquals(0xA3, reader.memory.read(0x200));
+        assertEquals(0xA3, create(image).memory.read(0x200));
+        assertEquals(0x12, writer.memory.read(0x200));
+        assertEquals(0x60, writer.memory.read(0x202));
+    }
+
+    @Test
+    void resetSharesThePagesAgain() {
+        Chip8 chip8 = create(RomImage.of(TestRoms.hex(STORE)));
+        chip8.runCycles(6);
+        chip8.reset();
+        assertTrue(chip8.memory.isShared(0x300));
+        assertEquals(0, chip8.memory.read(0x300));
+
+        chip8.runCycles(6);
+        assertFalse(chip8.memory.isShared(0x300));
+        assertEquals(0x11, chip8.memory.read(0x300));
+    }
+
+    @Test
+    void restoreKeepsUnchangedPagesShared() {
+        Chip8 chip8 = create(RomImage.of(TestRoms.hex(STORE)));
+        byte[] saved = TestRoms.snapshot(chip8);
+        chip8.runCycles(6);
+        chip8.restore(saved);
+        assertTrue(chip8.memory.isShared(0x200));
+        assertEquals(0, chip8.memory.read(0x300));
+
+        chip8.runCycles(6);
+        byte[] written = TestRoms.snapshot(chip8);
+        chip8.reset();
+        chip8.restore(written);
+        assertFalse(chip8.memory.isShared(0x300));
+        assertTrue(chip8.memory.isShared(0x200));
+        assertEquals(0x11, chip8.memory.read(0x300));
+    }
+}
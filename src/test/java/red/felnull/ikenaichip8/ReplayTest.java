@@ -0,0 +1,115 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayTest {
+    private static final int FRAMES = 300;
+
+    private static Chip8 create() {
+        Chip8 chip8 = new Chip8();
+        chip8.setBlockCache(true);
+        chip8.loadROM(TestRoms.timers());
+        return chip8;
+    }
+
+    private static void press(Chip8 chip8, int frame) {
+        if (frame % 7 == 0)
+            chip8.pressKey(frame % 16);
+        else if (frame % 7 == 3)
+            chip8.releaseKey((frame - 3) % 16);
+    }
+
+    private static InputLog record(long seed, byte[][] states) throws IOException {
+        Chip8 chip8 = create();
+        InputLog log = new InputLog(seed);
+        chip8.record(log);
+        chip8.init();
+        for (int i = 0; i < FRAMES; i++) {
+            press(chip8, i);
+            chip8.runFrame();
+            states[i] = TestRoms.snapshot(chip8);
+        }
+        return InputLog.readFrom(new ByteArrayInputStream(log.toByteArray()));
+    }
+
+    @Test
+    void replayMatchesRecording() throws IOException {
+        byte[][] recorded = new byte[FRAMES][];
+        InputLog log = record(99, recorded);
+        assertTrue(log.getEventCount() > 0);
+
+        Chip8 chip8 = create();
+        chip8.replay(log);
+        chip8.init();
+        for (int i = 0; i < FRAMES; i++) {
+            chip8.pressKey(i % 16);
+            chip8.runFrame();
+            assertArrayEquals(recorded[i], TestRoms.snapshot(chip8));
+        }
+        assertTrue(chip8.isReplayDone());
+    }
+
+    @Test
+    void replayFromRestoredSnapshot() throws IOException {
+        byte[][] recorded = new byte[FRAMES][];
+        InputLog log = record(5, recorded);
+
+        Chip8 chip8 = create();
+        chip8.replay(log);
+        chip8.init();
+        Rewind rewind = new Rewind(chip8, 10, 1 << 16);
+        chip8.addCycleListener(rewind);
+        for (int i = 0; i < FRAMES; i++)
+            chip8.runFrame();
+        assertArrayEquals(recorded[FRAMES - 1], TestRoms.snapshot(chip8));
+
+        assertEquals(15, rewind.stepBack(15));
+        assertArrayEquals(recorded[FRAMES - 151], TestRoms.snapshot(chip8));
+        for (int i = FRAMES - 150; i < FRAMES; i++) {
+            chip8.runFrame();
+            assertArrayEquals(recorded[i], TestRoms.snapshot(chip8));
+        }
+
+        Chip8 other = create();
+        other.replay(log);
+        other.restore(recorded[99]);
+        for (int i = 100; i < FRAMES; i++)
+            other.runFrame();
+        assertArrayEquals(recorded[FRAMES - 1], TestRoms.snapshot(other));
+    }
+
+    @Test
+    void rewindWhileRecording() throws IOException {
+        Chip8 chip8 = create();
+        InputLog log = new InputLog(17);
+        chip8.record(log);
+        chip8.init();
+        byte[] saved = null;
+        for (int i = 0; i < FRAMES; i++) {
+            press(chip8, i);
+            chip8.runFrame();
+            if (i == 100)
+                saved = TestRoms.snapshot(chip8);
+        }
+        chip8.restore(saved);
+        for (int i = 101; i < FRAMES; i++) {
+            press(chip8, i + 2);
+            chip8.runFrame();
+        }
+        byte[] expected = TestRoms.snapshot(chip8);
+
+        Chip8 other = create();
+        other.replay(InputLog.readFrom(new ByteArrayInputStream(log.toByteArray())));
+        other.init();
+        for (int i = 0; i < FRAMES; i++)
+            other.runFrame();
+        assertArrayEquals(expected, TestRoms.snapshot(other));
+    }
+}
@@ -0,0 +1,76 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RewindTest {
+    @Test
+    void stepBackRestoresRecordedPoints() {
+        Chip8 chip8 = TestRoms.create(TestRoms.load("digits.ch8"), true, 1);
+        Rewind rewind = new Rewind(chip8, 5, 1 << 16);
+        chip8.addCycleListener(rewind);
+        List<byte[]> points = new ArrayList<>();
+        rewind.record();
+        points.add(TestRoms.snapshot(chip8));
+        for (int i = 0; i < 100; i++) {
+            chip8.runFrame();
+            if (rewind.size() == points.size())
+                points.add(TestRoms.snapshot(chip8));
+        }
+        assertEquals(20, rewind.size());
+
+        assertTrue(rewind.stepBack());
+        assertArrayEquals(points.get(19), TestRoms.snapshot(chip8));
+        assertEquals(5, rewind.stepBack(5));
+        assertArrayEquals(points.get(14), TestRoms.snapshot(chip8));
+        assertEquals(14, rewind.stepBack(100));
+        assertArrayEquals(points.get(0), TestRoms.snapshot(chip8));
+        assertFalse(rewind.stepBack());
+    }
+
+    @Test
+    void fullRingDropsOldest() {
+        Chip8 chip8 = TestRoms.create(TestRoms.timers(), true, 1);
+        Rewind rewind = new Rewind(chip8, 1, 512);
+        chip8.addCycleListener(rewind);
+        for (int i = 0; i < 200; i++)
+            chip8.runFrame();
+        assertTrue(rewind.size() > 0);
+        assertTrue(rewind.size() < 199);
+        assertTrue(rewind.getUsedBytes() <= 512);
+        byte[] last = TestRoms.snapshot(chip8);
+        chip8.runFrame();
+        assertTrue(rewind.stepBack());
+        assertArrayEquals(last, TestRoms.snapshot(chip8));
+        while (rewind.stepBack()) ;
+        assertEquals(0, rewind.size());
+    }
+
+    @Test
+    void modeChangeClearsHistory() {
+        Chip8 chip8 = TestRoms.create(TestRoms.timers(), true, 1);
+        Rewind rewind = new Rewind(chip8, 1, 1 << 16);
+        chip8.addCycleListener(rewind);
+        for (int i = 0; i < 10; i++)
+            chip8.runFrame();
+        assertTrue(rewind.size() > 0);
+
+        chip8.setMode(Chip8Mode.XOCHIP);
+        chip8.init();
+        assertFalse(rewind.stepBack());
+        assertEquals(0, rewind.size());
+        for (int i = 0; i < 10; i++)
+            chip8.runFrame();
+        byte[] last = TestRoms.snapshot(chip8);
+        chip8.runFrame();
+        assertTrue(rewind.stepBack());
+        assertArrayEquals(last, TestRoms.snapshot(chip8));
+    }
+}
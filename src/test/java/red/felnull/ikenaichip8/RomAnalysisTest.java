@@ -0,0 +1,113 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RomAnalysisTest {
+    private static RomAnalysis analyze(Chip8Mode mode, String rom) {
+        return RomImage.of(TestRoms.hex(rom)).getAnalysis(mode);
+    }
+
+    private static void assertMarks(RomAnalysis analysis, int... marks) {
+        for (int i = 0; i < marks.length; i++)
+            assertEquals(marks[i], analysis.getMark(0x200 + i), String.format("0x%03x", 0x200 + i));
+    }
+
+    @Test
+    void traceMarksCodeOperandsAndData() {
+        // I = 0x20A, call 0x208, halt, an unreachable jump, return, then two bytes of sprite data
+        RomAnalysis analysis = analyze(Chip8Mode.CHIP8, "A20A 2208 1204 1234 00EE FF81");
+        assertMarks(analysis,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.UNKNOWN, RomAnalysis.UNKNOWN,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.DATA, RomAnalysis.UNKNOWN);
+        assertEquals(4, analysis.getInstructionCount());
+        assertTrue(analysis.isCode(0x208));
+        assertFalse(analysis.isCode(0x206));
+        assertEquals(RomAnalysis.UNKNOWN, analysis.getMark(0x1FF));
+        assertEquals(RomAnalysis.UNKNOWN, analysis.getMark(0x20C));
+    }
+
+    @Test
+    void bothSidesOfASkipAreCode() {
+        RomAnalysis analysis = analyze(Chip8Mode.CHIP8, "3000 6101 6202 1206");
+        assertEquals(4, analysis.getInstructionCount());
+        for (int address = 0x200; address < 0x208; address += 2)
+            assertTrue(analysis.isCode(address));
+    }
+
+    @Test
+    void jumpTableStopsTheTrace() {
+        RomAnalysis analysis = analyze(Chip8Mode.CHIP8, "B204 1204 1204");
+        assertEquals(1, analysis.getInstructionCount());
+        assertEquals(RomAnalysis.UNKNOWN, analysis.getMark(0x202));
+        assertEquals(RomAnalysis.UNKNOWN, analysis.getMark(0x204));
+    }
+
+    @Test
+    void longLoadIsFourBytes() {
+        // A skip over F000 NNNN skips 6 bytes, the operand points at the data at 0x20A
+        RomAnalysis analysis = analyze(Chip8Mode.XOCHIP, "3000 F000 020A 1206 0000 FF");
+        assertMarks(analysis,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.CODE, RomAnalysis.OPERAND, RomAnalysis.OPERAND, RomAnalysis.OPERAND,
+                RomAnalysis.CODE, RomAnalysis.OPERAND,
+                RomAnalysis.UNKNOWN, RomAnalysis.UNKNOWN,
+                RomAnalysis.DATA);
+        assertEquals(3, analysis.getInstructionCount());
+        assertEquals(Chip8Mode.XOCHIP, analysis.getMode());
+    }
+
+    @Test
+    void analysisIsSharedPerModeAndQuirks() {
+        RomImage image = RomImage.of(TestRoms.hex("6001 1202"));
+        RomAnalysis analysis = image.getAnalysis(Chip8Mode.CHIP8);
+        assertSame(analysis, image.getAnalysis(Chip8Mode.CHIP8));
+        assertSame(analysis, image.getAnalysis(Chip8Mode.CHIP8, Chip8Quirk.defaults()));
+        assertNotSame(analysis, image.getAnalysis(Chip8Mode.SCHIP));
+        assertNotSame(analysis, image.getAnalysis(Chip8Mode.CHIP8, EnumSet.noneOf(Chip8Quirk.class)));
+        assertEquals(Chip8Mode.SCHIP, image.getAnalysis(Chip8Mode.SCHIP).getMode());
+
+        Chip8 first = new Chip8();
+        first.loadROM(image);
+        first.init();
+        Chip8 second = new Chip8();
+        second.loadROM(image);
+        second.init();
+        assertSame(analysis, first.memory.getAnalysis());
+        assertSame(analysis, second.memory.getAnalysis());
+    }
+
+    @Test
+    void blocksAreSharedUntilWritten() {
+        RomImage image = RomImage.of(TestRoms.hex("6001 6102 1204"));
+        Chip8 first = new Chip8();
+        first.setBlockCache(true);
+        first.loadROM(image);
+        first.init();
+        Chip8 second = new Chip8();
+        second.setBlockCache(true);
+        second.loadROM(image);
+        second.init();
+        BlockCache.Block block = first.blockCache.getBlock(0x200);
+        assertSame(block, second.blockCache.getBlock(0x200));
+        assertSame(block, image.getAnalysis(Chip8Mode.CHIP8).getBlock(0x200));
+
+        second.memory.write(0x203, 0x03);
+        BlockCache.Block written = second.blockCache.getBlock(0x200);
+        assertNotSame(block, written);
+        assertEquals(0x6103, written.opcodes[1]);
+        assertSame(block, first.blockCache.getBlock(0x200));
+        assertEquals(0x6102, block.opcodes[1]);
+    }
+}
@@ -0,0 +1,117 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RomLibraryTest {
+    @TempDir
+    Path directory;
+
+    private Path pack(String... names) throws IOException {
+        Path roms = Files.createDirectories(directory.resolve("roms"));
+        for (String name : names)
+            Files.write(roms.resolve(name), TestRoms.load(name.substring(0, name.indexOf('.')) + ".ch8"));
+        Path archive = directory.resolve("roms.c8l");
+        RomLibrary.pack(archive, roms);
+        return archive;
+    }
+
+    private static byte[] bytes(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Test
+    void packAndOpenRoundTrip() throws IOException {
+        RomLibrary library = RomLibrary.open(pack(TestRoms.BUNDLED));
+        assertEquals(TestRoms.BUNDLED.length, library.size());
+        for (int i = 1; i < library.size(); i++)
+            assertTrue(library.getHash(i - 1) < library.getHash(i));
+        for (String name : TestRoms.BUNDLED) {
+            byte[] rom = TestRoms.load(name);
+            int index = library.indexOf(name);
+            assertEquals(name, library.getName(index));
+            assertEquals(rom.length, library.getLength(index));
+            assertArrayEquals(rom, bytes(library.getData(index)));
+            assertEquals(RomImage.of(rom).getHash(), library.getHash(index));
+            assertEquals(RomLibrary.detect(rom), library.getMode(index));
+            assertEquals(index, library.indexOf(library.getHash(index)));
+
+            RomImage image = library.getImage(index);
+            assertEquals(rom.length, image.getLength());
+            assertEquals(library.getHash(index), image.getHash());
+        }
+        assertEquals(-1, library.indexOf("missing.ch8"));
+        assertEquals(-1, library.indexOf(RomImage.of(new byte[]{0x12, 0x00}).getHash()));
+        assertThrows(IllegalArgumentException.class, () -> library.getName(library.size()));
+    }
+
+    @Test
+    void sameDataIsStoredOnce() throws IOException {
+        byte[] rom = TestRoms.load("alu.ch8");
+        Path roms = Files.createDirectories(directory.resolve("roms"));
+        Files.write(roms.resolve("alu.ch8"), rom);
+        Files.write(roms.resolve("alu.sc8"), rom);
+        Path archive = directory.resolve("roms.c8l");
+        RomLibrary.pack(archive, List.of(roms.resolve("alu.ch8"), roms.resolve("alu.sc8")));
+        assertEquals(12 + 2 * 24 + "alu.ch8alu.sc8".length() + rom.length, Files.size(archive));
+
+        RomLibrary library = RomLibrary.open(archive);
+        int first = library.indexOf("alu.ch8");
+        int second = library.indexOf("alu.sc8");
+        assertEquals(library.getHash(first), library.getHash(second));
+        assertArrayEquals(rom, bytes(library.getData(second)));
+        assertEquals(Chip8Mode.CHIP8, library.getMode(first));
+        assertEquals(Chip8Mode.SCHIP, library.getMode(second));
+
+        Chip8 chip8 = new Chip8();
+        library.load(chip8, second);
+        assertEquals(Chip8Mode.SCHIP, chip8.getMode());
+    }
+
+    @Test
+    void detectFindsTheLowestMode() {
+        assertEquals(Chip8Mode.CHIP8, RomLibrary.detect(TestRoms.hex("6001 1202")));
+        assertEquals(Chip8Mode.SCHIP, RomLibrary.detect(TestRoms.hex("00FF 1202")));
+        assertEquals(Chip8Mode.XOCHIP, RomLibrary.detect(TestRoms.hex("00FF F000 0300 1206")));
+        // Unreachable opcodes do not count
+        assertEquals(Chip8Mode.CHIP8, RomLibrary.detect(TestRoms.hex("1200 00FF F000")));
+        assertEquals(Chip8Mode.XOCHIP, RomLibrary.detect(new byte[3585]));
+    }
+
+    @Test
+    void truncatedEntryTableIsRejected() throws IOException {
+        byte[] data = Files.readAllBytes(pack("alu.ch8", "digits.ch8", "sprites.ch8"));
+        Path truncated = directory.resolve("truncated.c8l");
+        Files.write(truncated, Arrays.copyOf(data, 12 + 24 + 10));
+        assertThrows(IllegalStateException.class, () -> RomLibrary.open(truncated));
+        Files.write(truncated, Arrays.copyOf(data, 6));
+        assertThrows(IllegalStateException.class, () -> RomLibrary.open(truncated));
+    }
+
+    @Test
+    void badEntriesAreRejected() throws IOException {
+        byte[] data = Files.readAllBytes(pack("alu.ch8", "digits.ch8"));
+        data[12 + 22] = 9;
+        data[12 + 24 + 8] = 0x7F;
+        Path corrupt = directory.resolve("corrupt.c8l");
+        Files.write(corrupt, data);
+        RomLibrary library = RomLibrary.open(corrupt);
+        assertThrows(IllegalStateException.class, () -> library.getMode(0));
+        assertThrows(IllegalStateException.class, () -> library.getData(1));
+        assertThrows(IllegalStateException.class, () -> library.getImage(1));
+    }
+}
@@ -0,0 +1,76 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RomRunnerTest {
+    @TempDir
+    Path directory;
+
+    private void writeLog(Path inputs, String name) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(inputs.resolve(name))) {
+            new InputLog(0).writeTo(stream);
+        }
+    }
+
+    @Test
+    void inputsMatchTheRomStem() throws IOException {
+        Path roms = Files.createDirectory(directory.resolve("roms"));
+        Path inputs = Files.createDirectory(directory.resolve("inputs"));
+        Files.write(roms.resolve("Pong.ch8"), TestRoms.load("digits.ch8"));
+        Files.write(roms.resolve("Pong2.ch8"), TestRoms.load("alu.ch8"));
+        Files.write(roms.resolve("Tank.xo8"), TestRoms.load("sprites.ch8"));
+        for (String name : new String[]{"Pong.c8i", "Pong@1.c8i", "Pong@run2.c8i", "Pong2.c8i", "Pongo.c8i", "Pong_1.c8i", "Tank.c8i"})
+            writeLog(inputs, name);
+
+        List<String> runs = new ArrayList<>();
+        for (RomRunner.Result result : new RomRunner(10, 2).run(roms, inputs))
+            runs.add(result.getRom() + " " + result.getInput());
+        assertEquals(Arrays.asList("Pong.ch8 Pong.c8i", "Pong.ch8 Pong@1.c8i", "Pong.ch8 Pong@run2.c8i", "Pong2.ch8 Pong2.c8i", "Tank.xo8 Tank.c8i"), runs);
+    }
+
+    @Test
+    void prefixStemsDoNotShareInputs() throws IOException {
+        Path roms = Files.createDirectory(directory.resolve("roms"));
+        Path inputs = Files.createDirectory(directory.resolve("inputs"));
+        Files.write(roms.resolve("Tetris.ch8"), TestRoms.load("digits.ch8"));
+        Files.write(roms.resolve("Tetris_Fran.ch8"), TestRoms.load("alu.ch8"));
+        for (String name : new String[]{"Tetris.c8i", "Tetris_Fran.c8i", "Tetris_Fran@2.c8i"})
+            writeLog(inputs, name);
+
+        List<String> runs = new ArrayList<>();
+        for (RomRunner.Result result : new RomRunner(10, 2).run(roms, inputs))
+            runs.add(result.getRom() + " " + result.getInput());
+        assertEquals(Arrays.asList("Tetris.ch8 Tetris.c8i", "Tetris_Fran.ch8 Tetris_Fran.c8i", "Tetris_Fran.ch8 Tetris_Fran@2.c8i"), runs);
+    }
+
+    @Test
+    void badFilesOnlyFailTheirRun() throws IOException {
+        Path roms = Files.createDirectory(directory.resolve("roms"));
+        Path inputs = Files.createDirectory(directory.resolve("inputs"));
+        Files.write(roms.resolve("Big.ch8"), new byte[8192]);
+        Files.write(roms.resolve("Pong.ch8"), TestRoms.load("digits.ch8"));
+        Files.write(roms.resolve("Tank.ch8"), TestRoms.load("sprites.ch8"));
+        Files.write(inputs.resolve("Pong.c8i"), new byte[]{1, 2, 3});
+
+        List<RomRunner.Result> results = new RomRunner(10, 2).run(roms, inputs);
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).getError());
+        assertEquals("Pong.c8i", results.get(1).getInput());
+        assertNotNull(results.get(1).getError());
+        assertNull(results.get(2).getError());
+        assertEquals(10, results.get(2).getFrames());
+    }
+}
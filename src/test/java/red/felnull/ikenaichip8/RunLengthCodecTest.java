@@ -0,0 +1,67 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RunLengthCodecTest {
+    private static void assertRoundTrip(byte[] from, byte[] to) {
+        byte[] out = new byte[to.length * 2 + 10];
+        int length = RunLengthCodec.encode(from, to, to.length, out, 3);
+        assertTrue(length - 3 <= to.length * 2 + 10);
+
+        byte[] data = from == null ? new byte[to.length] : from.clone();
+        RunLengthCodec.decode(out, 3, length, data);
+        assertArrayEquals(to, data);
+        if (from != null) {
+            RunLengthCodec.decode(out, 3, length, data);
+            assertArrayEquals(from, data);
+        }
+    }
+
+    @Test
+    void roundTrip() {
+        Random random = new Random(1);
+        for (int size : new int[]{0, 1, 2, 3, 127, 128, 300, 5000}) {
+            for (int density : new int[]{0, 1, 10, 50, 100}) {
+                byte[] from = new byte[size];
+                random.nextBytes(from);
+                byte[] to = from.clone();
+                for (int i = 0; i < size; i++) {
+                    if (random.nextInt(100) < density)
+                        to[i] = (byte) random.nextInt(256);
+                }
+                assertRoundTrip(from, to);
+                assertRoundTrip(null, to);
+                assertRoundTrip(null, new byte[size]);
+            }
+        }
+    }
+
+    @Test
+    void worstCase() {
+        byte[] from = new byte[4096];
+        byte[] to = new byte[4096];
+        for (int i = 0; i < to.length; i++)
+            to[i] = (byte) (i % 3 == 0 ? 1 : 0);
+        assertRoundTrip(from, to);
+        for (int i = 0; i < to.length; i++)
+            to[i] = (byte) (i % 2);
+        assertRoundTrip(from, to);
+    }
+
+    @Test
+    void runs() {
+        byte[] to = new byte[300];
+        to[200] = 5;
+        to[202] = 6;
+        byte[] out = new byte[to.length * 2 + 10];
+        assertEquals(0, RunLengthCodec.encode(null, new byte[300], 300, out, 0));
+        assertEquals(6, RunLengthCodec.encode(null, to, 300, out, 0));
+        assertArrayEquals(new byte[]{(byte) 0xC8, 0x01, 3, 5, 0, 6}, java.util.Arrays.copyOf(out, 6));
+    }
+}
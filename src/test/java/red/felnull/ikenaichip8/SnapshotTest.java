@@ -0,0 +1,111 @@
+package red.felnull.ikenaichip8;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SnapshotTest {
+    private static void runFrames(Chip8 chip8, int frames) {
+        for (int i = 0; i < frames; i++)
+            chip8.runFrame();
+    }
+
+    @Test
+    void restoreContinuesTheSameWay() {
+        for (boolean blockCache : new boolean[]{false, true}) {
+            Chip8 chip8 = TestRoms.create(TestRoms.timers(), blockCache, 7);
+            runFrames(chip8, 37);
+            byte[] saved = TestRoms.snapshot(chip8);
+            runFrames(chip8, 200);
+            byte[] expected = TestRoms.snapshot(chip8);
+            long cycles = chip8.getCycles();
+
+            chip8.restore(saved);
+            assertArrayEquals(saved, TestRoms.snapshot(chip8));
+            runFrames(chip8, 200);
+            assertEquals(cycles, chip8.getCycles());
+            assertArrayEquals(expected, TestRoms.snapshot(chip8));
+        }
+    }
+
+    @Test
+    void restoreIntoAnotherEmulator() {
+        for (Chip8Mode mode : Chip8Mode.values()) {
+            Chip8 chip8 = new Chip8();
+            chip8.setMode(mode);
+            chip8.setSeed(3);
+            chip8.loadROM(TestRoms.timers());
+            chip8.init();
+            runFrames(chip8, 50);
+            byte[] saved = TestRoms.snapshot(chip8);
+
+            Chip8 other = new Chip8();
+            other.setMode(mode);
+            other.setSeed(11);
+            other.restore(saved);
+            runFrames(chip8, 100);
+            runFrames(other, 100);
+            assertArrayEquals(TestRoms.snapshot(chip8), TestRoms.snapshot(other));
+        }
+    }
+
+    @Test
+    void seededRandomMatchesJavaRandom() {
+        Chip8Random random = new Chip8Random(1234);
+        Random expected = new Random(1234);
+        for (int bound : new int[]{1, 7, 256, 32767, 1 << 20, Integer.MAX_VALUE})
+            for (int i = 0; i < 100; i++)
+                assertEquals(expected.nextInt(bound), random.nextInt(bound));
+    }
+
+    @Test
+    void rejectedSnapshotChangesNothing() {
+        Chip8 chip8 = TestRoms.create(TestRoms.timers(), true, 5);
+        runFrames(chip8, 20);
+        byte[] saved = TestRoms.snapshot(chip8);
+        runFrames(chip8, 20);
+        byte[] current = TestRoms.snapshot(chip8);
+
+        byte[] wrongMode = saved.clone();
+        wrongMode[8] = (byte) Chip8Mode.XOCHIP.ordinal();
+        byte[] wrongQuirks = saved.clone();
+        wrongQuirks[9] ^= 1;
+        byte[] wrongVersion = saved.clone();
+        wrongVersion[5]++;
+        byte[] wrongMemory = saved.clone();
+        ByteBuffer.wrap(wrongMemory).putInt(saved.length - (4 + 32 * 8) - (4 + 4096), 123);
+        byte[] wrongDisplay = saved.clone();
+        wrongDisplay[saved.length - 32 * 8 - 4]++;
+        byte[] truncated = new byte[saved.length - 1];
+        System.arraycopy(saved, 0, truncated, 0, truncated.length);
+
+        for (byte[] data : new byte[][]{wrongMode, wrongQuirks, wrongVersion, wrongMemory, wrongDisplay, truncated, new byte[4]}) {
+            assertThrows(IllegalStateException.class, () -> chip8.restore(data));
+            assertArrayEquals(current, TestRoms.snapshot(chip8));
+        }
+    }
+
+    @Test
+    void quirksMustMatch() {
+        Chip8 chip8 = TestRoms.create(TestRoms.timers(), true, 5);
+        runFrames(chip8, 20);
+        byte[] saved = TestRoms.snapshot(chip8);
+
+        Chip8 other = new Chip8();
+        other.setQuirks(Chip8Quirk.cosmac());
+        other.loadROM(TestRoms.timers());
+        other.init();
+        byte[] current = TestRoms.snapshot(other);
+        assertThrows(IllegalStateException.class, () -> other.restore(saved));
+        assertArrayEquals(current, TestRoms.snapshot(other));
+        other.setQuirks(Chip8Quirk.defaults());
+        other.init();
+        other.restore(saved);
+        assertArrayEquals(saved, TestRoms.snapshot(other));
+    }
+}
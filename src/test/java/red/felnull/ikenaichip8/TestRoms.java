@@ -0,0 +1,125 @@
+package red.felnull.ikenaichip8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * ROMs used by the tests
+ *
+ * @author MORIMORI0317
+ */
+final class TestRoms {
+    static final String[] BUNDLED = {"alu.ch8", "digits.ch8", "sprites.ch8"};
+
+    private TestRoms() {
+    }
+
+    static byte[] load(String name) {
+        try (InputStream stream = TestRoms.class.getResourceAsStream("/roms/" + name)) {
+            if (stream == null)
+                throw new IllegalStateException("No bundled rom: " + name);
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = stream.read(buffer)) >= 0)
+                bout.write(buffer, 0, len);
+            return bout.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits on the delay timer, draws a random digit, beeps and reads a key in a loop
+     *
+     * @return Rom data
+     */
+    static byte[] timers() {
+        return hex("6005 F015 F107 3100 1204 C20F F229 00E0 6300 D335 6403 F418 E5A1 7501 1200");
+    }
+
+    static byte[] hex(String text) {
+        text = text.replaceAll("\\s+", "");
+        byte[] data = new byte[text.length() / 2];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) Integer.parseInt(text.substring(i * 2, i * 2 + 2), 16);
+        return data;
+    }
+
+    static Chip8 create(byte[] rom, boolean blockCache, long seed) {
+        Chip8 chip8 = new Chip8();
+        chip8.setBlockCache(blockCache);
+        chip8.setSeed(seed);
+        chip8.loadROM(rom);
+        chip8.init();
+        return chip8;
+    }
+
+    static byte[] snapshot(Chip8 chip8) {
+        byte[] data = new byte[chip8.getSnapshotSize()];
+        chip8.snapshot(data);
+        return data;
+    }
+
+    /**
+     * Get the V registers from a snapshot
+     *
+     * @param chip8 Emulator
+     * @return V0 to VF
+     */
+    static byte[] registers(Chip8 chip8) {
+        byte[] registers = new byte[16];
+        System.arraycopy(snapshot(chip8), cpuOffset(chip8), registers, 0, 16);
+        return registers;
+    }
+
+    static int pc(Chip8 chip8) {
+        byte[] data = snapshot(chip8);
+        int offset = cpuOffset(chip8) + 16 + 2 + 32 + 1;
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    static int index(Chip8 chip8) {
+        byte[] data = snapshot(chip8);
+        int offset = cpuOffset(chip8) + 16;
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    private static int cpuOffset(Chip8 chip8) {
+        return chip8.getSnapshotSize() - CPU.getSaveSize() - chip8.memory.getSaveSize() - chip8.display.getSaveSize();
+    }
+
+    /**
+     * Get the number of instructions of frames run by runFrame from a reset
+     *
+     * @param instructionsPerSecond Instructions per second
+     * @param first                 First frame
+     * @param count                 Number of frames
+     * @return Instruction count
+     */
+    static long frameCycles(int instructionsPerSecond, int first, int count) {
+        long credit = 0;
+        long cycles = 0;
+        for (int frame = 0; frame < first + count; frame++) {
+            long frameCycles = Math.max(1, (instructionsPerSecond - credit + 59) / 60);
+            credit += frameCycles * 60;
+            while (credit >= instructionsPerSecond)
+                credit -= instructionsPerSecond;
+            if (frame >= first)
+                cycles += frameCycles;
+        }
+        return cycles;
+    }
+
+    static boolean isDrawn(Chip8 chip8, int x, int y, int width, int height) {
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                if (chip8.getGraphic(x + j, y + i))
+                    return true;
+            }
+        }
+        return false;
+    }
+}
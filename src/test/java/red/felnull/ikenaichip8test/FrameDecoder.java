@@ -0,0 +1,116 @@
+package red.felnull.ikenaichip8test;
+
+import red.felnull.ikenaichip8.FrameEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Reference decoder for FrameEncoder packets
+ * Deltas are only applied on top of an unbroken sequence that started with a keyframe
+ *
+ * @author MORIMORI0317
+ */
+public class FrameDecoder {
+    private final byte[] frame = new byte[FrameEncoder.MAX_FRAME_BYTES];
+    private boolean synced;
+    private int sequence;
+    private int width;
+    private int height;
+    private int planes;
+
+    /**
+     * Decode one packet
+     * The buffer position is moved to the end of the packet
+     *
+     * @param packet Packet
+     * @return Whether the frame is valid, false until a keyframe arrives after a lost packet
+     */
+    public boolean decode(ByteBuffer packet) {
+        int type = packet.get();
+        int packetSequence = packet.getInt();
+        int packetWidth = packet.get() & 0xFF;
+        int packetHeight = packet.get() & 0xFF;
+        int packetPlanes = packet.get() & 0xFF;
+        boolean keyframe = type == FrameEncoder.KEYFRAME;
+        if (!keyframe && type != FrameEncoder.DELTA)
+            throw new IllegalStateException("Unknown packet type: " + type);
+        if (!keyframe && (!synced || packetSequence != sequence + 1 || packetWidth != width || packetHeight != height || packetPlanes != planes)) {
+            synced = false;
+            packet.position(packet.limit());
+            return false;
+        }
+        if (keyframe)
+            Arrays.fill(frame, (byte) 0);
+        int position = 0;
+        while (packet.hasRemaining()) {
+            position += readVarInt(packet);
+            int literals = readVarInt(packet);
+            for (int i = 0; i < literals; i++)
+                frame[position++] ^= packet.get();
+        }
+        sequence = packetSequence;
+        width = packetWidth;
+        height = packetHeight;
+        planes = packetPlanes;
+        synced = true;
+        return true;
+    }
+
+    /**
+     * Get if drawn in any plane of the decoded frame
+     *
+     * @param x Xpos
+     * @param y Ypos
+     * @return drawn
+     */
+    public boolean getGraphic(int x, int y) {
+        int planeBytes = height * width / 8;
+        for (int plane = 0; plane < planes; plane++) {
+            if ((frame[plane * planeBytes + y * width / 8 + x / 8] & (0x80 >> (x & 7))) != 0)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the decoded frame rows, same layout as Chip8.getFrame(long[])
+     *
+     * @param rows Destination
+     * @return Number of long written
+     */
+    public int getFrame(long[] rows) {
+        int words = planes * height * width / 64;
+        for (int w = 0; w < words; w++) {
+            long row = 0;
+            for (int i = 0; i < 8; i++)
+                row = row << 8 | (frame[w * 8 + i] & 0xFF);
+            rows[w] = row;
+        }
+        return words;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getPlanes() {
+        return planes;
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = buffer.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -1,17 +1,26 @@
 package red.felnull.ikenaichip8test;
 
 import red.felnull.ikenaichip8.Chip8;
-
+import red.felnull.ikenaichip8.Chip8Audio;
+import red.felnull.ikenaichip8.Chip8Images;
+import red.felnull.ikenaichip8.FrameInfo;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public class Test {
     public static void main(String[] args) throws Exception {
@@ -24,6 +33,7 @@ public class Test {
         int h = 32 * 10 + 37;
         frame.setBounds(d.width / 2 - w / 2, d.height / 2 - h / 2, w, h);
         chip8.setCycleSpeedHz(50);
+        chip8.setInstructionsPerSecond(50);
         C8Canvas canvas = new C8Canvas(chip8);
         frame.add(canvas);
         canvas.setSize(w, h);
@@ -34,25 +44,37 @@ public class Test {
         chip8.loadROM(data);
         chip8.runAsync();
 
-        chip8.addCycleListener(c8 -> canvas.repaint());
-        chip8.addCycleListener(n -> {
-            if (n.isBeeping())
-                java.awt.Toolkit.getDefaultToolkit().beep();
+        chip8.addDisplayListener((c8, region) -> {
+            int xp = canvas.getWidth() / c8.getWidth() + 1;
+            int yp = canvas.getHeight() / c8.getHeight() + 1;
+            canvas.repaint(region.getX() * xp, region.getY() * yp, region.getWidth() * xp, region.getHeight() * yp);
         });
-
+        Chip8Audio audio = new Chip8Audio(44100);
+        chip8.setAudio(audio);
+        Thread audioThread = new Thread(() -> playAudio(audio), "chip8-audio");
+        audioThread.setDaemon(true);
+        audioThread.start();
     }
 
-    public static byte[] inputStreamToByteArray(InputStream stream) throws IOException {
-        ByteArrayOutputStream bout = new ByteArrayOutputStream();
-        byte[] buffer = new byte[1024];
-        while (true) {
-            int len = stream.read(buffer);
-            if (len < 0) {
-                break;
+    private static void playAudio(Chip8Audio audio) {
+        AudioFormat format = new AudioFormat(audio.getSampleRate(), 16, 1, true, false);
+        try (SourceDataLine line = AudioSystem.getSourceDataLine(format)) {
+            line.open(format, audio.getSampleRate() / 10);
+            line.start();
+            byte[] data = new byte[audio.getSampleRate() / 60 * 2];
+            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+            while (true) {
+                buffer.clear();
+                audio.read(buffer);
+                line.write(data, 0, data.length);
             }
-            bout.write(buffer, 0, len);
+        } catch (LineUnavailableException ex) {
+            ex.printStackTrace();
         }
-        return bout.toByteArray();
+    }
+
+    public static byte[] inputStreamToByteArray(InputStream stream) throws IOException {
+        return stream.readAllBytes();
     }
 
     private static class C8Frame extends JFrame implements KeyListener, MouseListener {
@@ -159,6 +181,8 @@ public class Test {
 
     private static class C8Canvas extends JPanel {
         private final Chip8 chip8;
+        private final BufferedImage image = new BufferedImage(128, 64, BufferedImage.TYPE_INT_RGB);
+        private final FrameInfo info = new FrameInfo();
 
         private C8Canvas(Chip8 chip8) {
             this.chip8 = chip8;
@@ -167,16 +191,12 @@ public class Test {
         public void paintComponent(Graphics g) {
             super.paintComponent(g);
 
-            int xp = getWidth() / 64 + 1;
-            int yp = getHeight() / 32 + 1;
-
-            for (int y = 0; y < 32; ++y) {
-                for (int x = 0; x < 64; ++x) {
-                    if (chip8.getGraphic(x, y)) {
-                        g.fillRect(x * xp, y * yp, xp, yp);
-                    }
-                }
-            }
+            Chip8Images.getFrame(chip8, image, 1, getBackground().getRGB(), getForeground().getRGB(), info);
+            int width = info.getWidth();
+            int height = info.getHeight();
+            int xp = getWidth() / width + 1;
+            int yp = getHeight() / height + 1;
+            g.drawImage(image, 0, 0, width * xp, height * yp, 0, 0, width, height, null);
         }
     }
 }